@@ -0,0 +1,65 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Build step (see pom.xml), run as a single source file, so it is not part of the application:
+ * writes a .gz variant next to each compressible static file, at the highest level,
+ * so that StaticFiles never compresses at request time.
+ */
+public class StaticCompressor {
+
+    private static final Set<String> EXTENSIONS = Set.of("html", "css", "js", "mjs", "json", "svg", "txt", "xml", "map");
+    private static final int MIN_SIZE = 256;
+
+    public static void main(String[] args) throws IOException {
+        for(String arg : args) {
+            Path directory = Path.of(arg);
+            if(Files.isDirectory(directory)) {
+                compressAll(directory);
+            }
+        }
+    }
+
+    private static void compressAll(Path directory) throws IOException {
+        List<Path> files;
+        try(Stream<Path> stream = Files.walk(directory)) {
+            files = stream.filter(Files::isRegularFile).filter(StaticCompressor::isCompressible).toList();
+        }
+        for(Path file : files) {
+            compress(file);
+        }
+    }
+
+    private static boolean isCompressible(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && EXTENSIONS.contains(name.substring(dot + 1));
+    }
+
+    private static void compress(Path file) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        Path target = file.resolveSibling(file.getFileName() + ".gz");
+        if(content.length < MIN_SIZE) {
+            Files.deleteIfExists(target);
+            return;
+        }
+        var buffer = new ByteArrayOutputStream(content.length);
+        try(OutputStream stream = new GZIPOutputStream(buffer) {{ def.setLevel(Deflater.BEST_COMPRESSION); }}) {
+            stream.write(content);
+        }
+        if(buffer.size() < content.length) {
+            Files.write(target, buffer.toByteArray());
+            Files.setLastModifiedTime(target, Files.getLastModifiedTime(file));
+        } else {
+            Files.deleteIfExists(target);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.phoswald.sample;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.phoswald.sample.sample.EchoRequest;
+import com.github.phoswald.sample.sample.EchoResponse;
+import com.github.phoswald.sample.task.TaskEntity;
+import com.github.phoswald.sample.utils.XmlBinder;
+
+import jakarta.xml.bind.JAXB;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApplicationBenchmark {
+
+    private final String echoRequest = "<echoRequest><input>Benchmark Input</input></echoRequest>";
+    private final byte[] echoRequestBytes = echoRequest.getBytes(StandardCharsets.UTF_8);
+    private final EchoResponse echoResponse = new EchoResponse();
+    private final XmlBinder xmlBinder = new XmlBinder(EchoRequest.class, EchoResponse.class);
+    private final ByteArrayOutputStream xmlBuffer = new ByteArrayOutputStream();
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final List<TaskEntity> tasks = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        echoResponse.setOutput("Received Benchmark Input");
+        for (int i = 0; i < 100; i++) {
+            TaskEntity entity = new TaskEntity();
+            entity.setNewTaskId();
+            entity.setUserId("guest");
+            entity.setTimestamp(Instant.now());
+            entity.setTitle("Benchmark Title " + i);
+            entity.setDescription("Benchmark Description " + i);
+            tasks.add(entity);
+        }
+    }
+
+    // baseline: the JAXB convenience methods and String buffers used before XmlBinder
+    @Benchmark
+    public String serializeXmlJaxb() {
+        var buffer = new StringWriter();
+        JAXB.marshal(echoResponse, buffer);
+        return buffer.toString();
+    }
+
+    @Benchmark
+    public EchoRequest deserializeXmlJaxb() {
+        return JAXB.unmarshal(new StringReader(echoRequest), EchoRequest.class);
+    }
+
+    @Benchmark
+    public int serializeXmlBinder() {
+        xmlBuffer.reset();
+        xmlBinder.write(echoResponse, xmlBuffer);
+        return xmlBuffer.size();
+    }
+
+    @Benchmark
+    public EchoRequest deserializeXmlBinder() {
+        return xmlBinder.read(EchoRequest.class, new ByteArrayInputStream(echoRequestBytes));
+    }
+
+    @Benchmark
+    public byte[] renderJsonTaskList() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(tasks);
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.phoswald.sample.task;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.phoswald.sample.ApplicationModule;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaskRepositoryBenchmark {
+
+    private TaskRepositoryFactory factory;
+    private String taskId;
+
+    @Setup
+    public void setup() {
+        var module = new ApplicationModule();
+        factory = new TaskRepositoryFactory(module::getEntityManagerFactory, module.getHashRing(), null, null); // without cache
+        try (TaskRepository repository = factory.openReadWrite(TaskRepository.DEFAULT_USER)) {
+            for (int i = 0; i < 1000; i++) {
+                repository.createTask(newTask(i));
+            }
+            TaskEntity entity = newTask(-1);
+            repository.createTask(entity);
+            taskId = entity.getTaskId();
+        }
+    }
+
+    @Benchmark
+    public List<TaskEntity> selectPage() {
+        try (TaskRepository repository = factory.openReadWrite(TaskRepository.DEFAULT_USER)) {
+            return repository.selectTasks(null, 100);
+        }
+    }
+
+    @Benchmark
+    public List<TaskEntity> selectPageReadOnly() {
+        try (TaskRepository repository = factory.openReadOnly(TaskRepository.DEFAULT_USER)) {
+            return repository.selectTasks(null, 100);
+        }
+    }
+
+    @Benchmark
+    public TaskEntity selectById() {
+        try (TaskRepository repository = factory.openReadOnly(TaskRepository.DEFAULT_USER)) {
+            return repository.selectTaskById(taskId);
+        }
+    }
+
+    @Benchmark
+    public void createUpdateDelete() {
+        TaskEntity entity = newTask(0);
+        try (TaskRepository repository = factory.openReadWrite(TaskRepository.DEFAULT_USER)) {
+            repository.createTask(entity);
+        }
+        try (TaskRepository repository = factory.openReadWrite(TaskRepository.DEFAULT_USER)) {
+            repository.selectTaskById(entity.getTaskId()).setTitle("Updated Title");
+        }
+        try (TaskRepository repository = factory.openReadWrite(TaskRepository.DEFAULT_USER)) {
+            repository.deleteTask(repository.selectTaskById(entity.getTaskId()));
+        }
+    }
+
+    private static TaskEntity newTask(int i) {
+        TaskEntity entity = new TaskEntity();
+        entity.setNewTaskId();
+        entity.setUserId("guest");
+        entity.setTimestamp(Instant.now());
+        entity.setTitle("Benchmark Title " + i);
+        return entity;
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.phoswald.sample.task;
+
+import java.io.Writer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.phoswald.sample.sample.SampleView;
+import com.github.phoswald.sample.sample.SampleViewModel;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaskViewBenchmark {
+
+    private final List<TaskEntity> entities = new ArrayList<>();
+    private TaskListViewModel listViewModel;
+    private TaskViewModel viewModel;
+    private SampleViewModel sampleViewModel;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < 100; i++) {
+            TaskEntity entity = new TaskEntity();
+            entity.setNewTaskId();
+            entity.setTimestamp(Instant.now());
+            entity.setTitle("Benchmark Title " + i);
+            entity.setDescription("Benchmark Description " + i);
+            entities.add(entity);
+        }
+        listViewModel = new TaskListViewModel(TaskViewModel.newList(entities), null, null);
+        viewModel = new TaskViewModel(entities.get(0));
+        sampleViewModel = new SampleViewModel("Benchmark Config");
+    }
+
+    @Benchmark
+    public String renderTaskList() {
+        return new TaskListView().render(listViewModel);
+    }
+
+    @Benchmark
+    public void renderTaskListToWriter() {
+        new TaskListView().render(listViewModel, Writer.nullWriter());
+    }
+
+    @Benchmark
+    public String renderTask() {
+        return new TaskView().render(viewModel);
+    }
+
+    @Benchmark
+    public String renderTaskEdit() {
+        return new TaskEditView().render(viewModel);
+    }
+
+    @Benchmark
+    public String renderSample() {
+        return new SampleView().render(sampleViewModel);
+    }
+
+    @Benchmark
+    public List<TaskViewModel> newViewModelList() {
+        return TaskViewModel.newList(entities);
+    }
+
+    @Benchmark
+    public String formatTimestamp() {
+        return TaskViewModel.format(entities.get(0).getTimestamp());
+    }
+}
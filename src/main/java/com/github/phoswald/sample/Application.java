@@ -1,173 +1,631 @@
 package com.github.phoswald.sample;
 
 import static ratpack.jackson.Jackson.fromJson;
-import static ratpack.jackson.Jackson.json;
 
-import java.io.StringReader;
-import java.io.StringWriter;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.regex.Pattern;
 
+import org.hibernate.StaleStateException;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.github.phoswald.sample.sample.EchoRequest;
+import com.github.phoswald.sample.sample.EchoResponse;
 import com.github.phoswald.sample.sample.SampleController;
 import com.github.phoswald.sample.sample.SampleResource;
+import com.github.phoswald.sample.task.TaskBatch;
+import com.github.phoswald.sample.task.TaskBatchOperation;
+import com.github.phoswald.sample.task.TaskBatchResult;
+import com.github.phoswald.sample.task.TaskChangeEvent;
 import com.github.phoswald.sample.task.TaskController;
 import com.github.phoswald.sample.task.TaskEntity;
+import com.github.phoswald.sample.task.TaskExport;
+import com.github.phoswald.sample.task.TaskRepository;
 import com.github.phoswald.sample.task.TaskResource;
+import com.github.phoswald.sample.utils.AbstractView;
+import com.github.phoswald.sample.utils.BlockingExecutor;
+import com.github.phoswald.sample.utils.ChunkedPage;
 import com.github.phoswald.sample.utils.ConfigProvider;
+import com.github.phoswald.sample.utils.Metrics;
+import com.github.phoswald.sample.utils.Page;
+import com.github.phoswald.sample.utils.PoolMetrics;
+import com.github.phoswald.sample.utils.PublisherInputStream;
+import com.github.phoswald.sample.utils.ResponseCompression;
+import com.github.phoswald.sample.utils.ServerSettings;
+import com.github.phoswald.sample.utils.StaticFiles;
+import com.github.phoswald.sample.utils.Validator;
+import com.github.phoswald.sample.utils.XmlBinder;
 
-import jakarta.xml.bind.JAXB;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.EventLoop;
+import jakarta.persistence.OptimisticLockException;
+import ratpack.exec.Execution;
+import ratpack.exec.Promise;
 import ratpack.form.Form;
 import ratpack.func.Action;
 import ratpack.handling.Chain;
 import ratpack.handling.Context;
 import ratpack.handling.Handler;
-import ratpack.server.BaseDir;
+import ratpack.http.RequestBodyTooLargeException;
+import ratpack.http.Response;
 import ratpack.server.RatpackServer;
+import ratpack.server.ServerConfig;
 import ratpack.server.ServerConfigBuilder;
+import ratpack.stream.Streams;
 
 public class Application {
 
     private static final Logger logger = LoggerFactory.getLogger(Application.class);
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int EXPORT_CHUNK_SIZE = 500;
+    private static final int BODY_PREFETCH = 4; // buffers of the request body read ahead of the parser
+    private static final String USER_HEADER = "x-user-id";
+    private static final Pattern USER_ID = Pattern.compile("[A-Za-z0-9._@-]{1,64}"); // fits user_id_, no control characters
 
     private final int port;
+    private final int batchMaxBytes;
+    private final boolean warmUp;
+    private final boolean exitAfterStart;
     private final SampleResource sampleResource;
     private final SampleController sampleController;
     private final TaskResource taskResource;
     private final TaskController taskController;
+    private final BlockingExecutor blockingExecutor;
+    private final PoolMetrics poolMetrics;
+    private final XmlBinder xmlBinder;
+    private final StaticFiles staticFiles;
+    private final ResponseCompression compression;
+    private final ServerSettings serverSettings;
+    private final AutoCloseable resources;
 
     private RatpackServer server;
 
     public Application( //
             ConfigProvider config, //
+            BlockingExecutor blockingExecutor, //
+            PoolMetrics poolMetrics, //
+            XmlBinder xmlBinder, //
             SampleResource sampleResource, //
             SampleController sampleController, //
             TaskResource taskResource, //
-            TaskController taskController) {
+            TaskController taskController, //
+            AutoCloseable resources) {
         this.port = Integer.parseInt(config.getConfigProperty("app.http.port").orElse("8080"));
+        this.batchMaxBytes = Integer.parseInt(config.getConfigProperty("app.tasks.batch.maxbytes").orElse("67108864"));
+        this.warmUp = Boolean.parseBoolean(config.getConfigProperty("app.startup.warmup").orElse("true"));
+        this.exitAfterStart = Boolean.parseBoolean(config.getConfigProperty("app.startup.exit").orElse("false"));
         this.sampleResource = sampleResource;
         this.sampleController = sampleController;
         this.taskResource = taskResource;
         this.taskController = taskController;
+        this.blockingExecutor = blockingExecutor;
+        this.poolMetrics = poolMetrics;
+        this.xmlBinder = xmlBinder;
+        this.staticFiles = new StaticFiles(config);
+        this.compression = new ResponseCompression(config);
+        this.serverSettings = new ServerSettings(config);
+        this.resources = resources; // threads and pools of the components, closed by stop()
+        registerMetrics();
     }
 
     public static void main(String[] args) throws Exception {
         var module = new ApplicationModule();
-        module.getApplication().start();
+        Application application = module.getApplication();
+        application.start();
+        if(application.exitAfterStart) {
+            // training run of the AOT cache (see Dockerfile), the JVM writes the cache when it exits
+            application.stop();
+            System.exit(0);
+        }
     }
 
     void start() throws Exception {
+        long start = System.nanoTime();
         logger.info("sample-ratpack is starting, port=" + port);
+        serverSettings.prepareTransport();
+        if(warmUp) {
+            warmUp();
+            taskResource.rebuildSearchIndex(); // Hibernate and the pools are ready, it does not delay the startup
+        } else {
+            sampleController.warmUpTemplates();
+            taskController.warmUpTemplates();
+        }
+        ServerConfig serverConfig = createConfig();
+        logger.info("HTTP server: " + serverSettings.describe(serverConfig));
         server = RatpackServer.start(server -> server
-                .serverConfig(createConfig())
+                .serverConfig(serverConfig)
                 .handlers(createRoutes()));
+        logger.info("sample-ratpack started in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    private void warmUp() throws Exception {
+        // everything the first requests would otherwise initialize, in parallel and before the port is opened
+        Map<String, Runnable> tasks = new LinkedHashMap<>();
+        tasks.put("templates", () -> {
+            sampleController.warmUpTemplates();
+            taskController.warmUpTemplates();
+        });
+        tasks.put("json", Application::warmUpJson);
+        tasks.put("xml", this::warmUpXml);
+        for(int shard = 0; shard < taskResource.getShards(); shard++) {
+            int warmUpShard = shard;
+            tasks.put("database-" + shard, () -> taskResource.warmUpDatabase(warmUpShard));
+        }
+        List<Future<?>> futures = new ArrayList<>();
+        try(ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofPlatform().name("warm-up-", 1).daemon().factory())) {
+            tasks.forEach((name, task) -> futures.add(executor.submit(() -> {
+                long start = System.nanoTime();
+                task.run();
+                logger.info("Warm-up of " + name + " done in " + (System.nanoTime() - start) / 1000000 + " ms");
+            })));
+            for(Future<?> future : futures) {
+                future.get(); // a failure fails the startup
+            }
+        }
+    }
+
+    private static void warmUpJson() {
+        try {
+            // loads and initializes the classes of Jackson, the mapper of Ratpack introspects our classes on first use
+            ObjectMapper mapper = new ObjectMapper();
+            mapper.writeValueAsBytes(new EchoResponse());
+            mapper.readValue("{}", EchoRequest.class);
+        } catch(IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void warmUpXml() {
+        xmlBinder.write(new EchoResponse(), OutputStream.nullOutputStream());
+        xmlBinder.read(EchoRequest.class, new ByteArrayInputStream("<echoRequest/>".getBytes(StandardCharsets.UTF_8)));
     }
 
     void stop() throws Exception {
-        server.stop();
+        try {
+            server.stop();
+        } finally {
+            resources.close();
+        }
+    }
+
+    int getPort() {
+        // the actual port, also when app.http.port=0 selected an ephemeral one
+        return server.getBindPort();
     }
 
-    private Action<? super ServerConfigBuilder> createConfig() {
-        return config -> config
+    private void registerMetrics() {
+        Metrics.counter("template_renders_total", "Templates rendered", () -> {
+            var stats = AbstractView.getCacheStatistics();
+            return stats.getHits() + stats.getMisses();
+        });
+        Metrics.counter("template_cache_misses_total", "Templates resolved and parsed", () -> AbstractView.getCacheStatistics().getMisses());
+        Metrics.gauge("jdbc_connections", "JDBC connections by state", "state", "active", () -> poolMetrics.getStatistics().active);
+        Metrics.gauge("jdbc_connections", "JDBC connections by state", "state", "idle", () -> poolMetrics.getStatistics().idle);
+        Metrics.gauge("jdbc_connections_pending", "Threads waiting for a JDBC connection", () -> poolMetrics.getStatistics().waiting);
+        Metrics.counter("jdbc_connection_timeouts_total", "JDBC connection acquisition timeouts", () -> poolMetrics.getStatistics().timeouts);
+        Metrics.gauge("task_change_subscribers", "Clients of the task change feed", taskResource::getChangeSubscriberCount);
+        Metrics.gauge("task_search_documents", "Tasks in the search index", taskResource::getSearchDocumentCount);
+        Metrics.gauge("task_writer_queue", "Creates waiting for the task writer", taskResource::getWriterQueueSize);
+        taskResource.getCacheStatistics().keySet().forEach(name -> {
+            Metrics.counter("task_cache_hits_total", "Task cache hits", "cache", name, () -> taskResource.getCacheStatistics().get(name).getHits());
+            Metrics.counter("task_cache_misses_total", "Task cache misses", "cache", name, () -> taskResource.getCacheStatistics().get(name).getMisses());
+        });
+    }
+
+    private ServerConfig createConfig() {
+        ServerConfigBuilder config = ServerConfig.builder()
                 .port(port)
-                .baseDir(BaseDir.find("resources/.ratpack").toAbsolutePath());
+                .baseDir(staticFiles.getBaseDir());
+        serverSettings.apply(config);
+        return config.build();
     }
 
     private Action<? super Chain> createRoutes() {
         return chain -> chain
-                .files(config -> config.indexFiles("index.html"))
+                .all(ctx -> {
+                    ctx.getResponse().noCompress(); // see ResponseCompression
+                    ctx.next();
+                })
+                .when(ctx -> !ctx.getRequest().getPath().startsWith("app/"), chain2 -> chain2.all(staticFiles))
+                .all(ctx -> {
+                    String userId = ctx.getRequest().getHeaders().get(USER_HEADER);
+                    if(userId != null && !USER_ID.matcher(userId).matches()) {
+                        ctx.clientError(400);
+                    } else {
+                        ctx.next();
+                    }
+                })
                 .get("app/rest/sample/time", createHandler(ctx -> sampleResource.getTime()))
                 .get("app/rest/sample/config", createHandler(ctx -> sampleResource.getConfig()))
                 .post("app/rest/sample/echo-xml", createXmlHandler(EchoRequest.class, (ctx, reqBody) -> sampleResource.postEcho(reqBody)))
                 .post("app/rest/sample/echo-json", createJsonHandler(EchoRequest.class, (ctx, reqBody) -> sampleResource.postEcho(reqBody)))
                 .get("app/pages/sample", createHtmlHandler(ctx -> sampleController.getSamplePage()))
+                .get("app/rest/stats/templates", createJsonHandler(ctx -> AbstractView.getCacheStatistics()))
+                .get("app/rest/stats/jdbc", createJsonHandler(ctx -> poolMetrics.getStatistics()))
+                .get("app/rest/stats/cache", createJsonHandler(ctx -> taskResource.getCacheStatistics()))
+                .get("app/rest/metrics", ctx -> compression.send(ctx, "text/plain; version=0.0.4; charset=utf-8",
+                        Unpooled.wrappedBuffer(Metrics.format().getBytes(StandardCharsets.UTF_8))))
                 .path("app/rest/tasks", ctx2 -> ctx2.byMethod(chain2 -> chain2
-                        .get(createJsonHandler(ctx -> taskResource.getTasks()))
-                        .post(createJsonHandler(TaskEntity.class, (ctx, reqBody) -> taskResource.postTasks(reqBody)))
+                        .get(instrument(ctx -> sendConditional(ctx, taskResource.getListValidator(getUserId(ctx)), () -> handleJson(ctx,
+                                () -> taskResource.getTasks(getUserId(ctx), ctx.getRequest().getQueryParams().get("after"), ctx.getRequest().getQueryParams().get("limit"))))))
+                        .post(createJsonHandler(TaskEntity.class, (ctx, reqBody) -> taskResource.postTasks(getUserId(ctx), reqBody)))
                 ))
+                .post("app/rest/tasks/batch", instrument(this::postBatch))
+                .get("app/rest/tasks/export", instrument(ctx -> blockingExecutor.open(release -> taskResource.exportTasks(getUserId(ctx), release)).onError(e -> handleError(ctx, e)).then(
+                        export -> sendNdjson(ctx, export))))
+                .get("app/rest/tasks/changes", ctx -> sendEvents(ctx, taskResource.getChanges(getUserId(ctx))))
+                .get("app/rest/tasks/search", createJsonHandler(ctx -> taskResource.searchTasks(getUserId(ctx),
+                        ctx.getRequest().getQueryParams().get("q"), ctx.getRequest().getQueryParams().get("limit"))))
                 .path("app/rest/tasks/:id", ctx2 -> ctx2.byMethod(chain2 -> chain2
-                        .get(createJsonHandler(ctx -> taskResource.getTask(ctx.getPathTokens().get("id"))))
-                        .put(createJsonHandler(TaskEntity.class, (ctx, reqBody) -> taskResource.putTask(ctx.getPathTokens().get("id"), reqBody)))
-                        .delete(createJsonHandler(ctx -> taskResource.deleteTask(ctx.getPathTokens().get("id"))))
+                        .get(instrument(ctx -> blockingExecutor.get(() -> taskResource.getTask(getUserId(ctx), ctx.getPathTokens().get("id"))).onError(e -> handleError(ctx, e)).then(
+                                result -> sendConditional(ctx, result == null ? null : TaskResource.getValidator(result), () -> sendJson(ctx, result)))))
+                        .put(createJsonHandler(TaskEntity.class, (ctx, reqBody) -> taskResource.putTask(getUserId(ctx), ctx.getPathTokens().get("id"), ctx.getRequest().getHeaders().get("if-match"), reqBody)))
+                        .delete(createJsonHandler(ctx -> taskResource.deleteTask(getUserId(ctx), ctx.getPathTokens().get("id"), ctx.getRequest().getHeaders().get("if-match"))))
                 ))
                 .path("app/pages/tasks", ctx2 -> ctx2.byMethod(chain2 -> chain2
-                        .get(createHtmlHandler(ctx -> taskController.getTasksPage()))
-                        .post(createHtmlHandler((ctx, form) -> taskController.postTasksPage(form.get("title"), form.get("description"))))
+                        .get(instrument(ctx -> {
+                            String query = ctx.getRequest().getQueryParams().get("q");
+                            if(query != null) {
+                                // not conditional: the index is updated after the list version has changed
+                                handleHtml(ctx, () -> taskController.searchTasksPage(getUserId(ctx), query));
+                            } else {
+                                sendConditional(ctx, taskController.getListValidator(getUserId(ctx)), () -> handleHtml(ctx,
+                                        () -> taskController.getTasksPage(getUserId(ctx), ctx.getRequest().getQueryParams().get("after"))));
+                            }
+                        }))
+                        .post(createHtmlHandler((ctx, form) -> taskController.postTasksPage(getUserId(ctx), form.get("title"), form.get("description"))))
                  ))
                 .path("app/pages/tasks/:id", ctx2 -> ctx2.byMethod(chain2 -> chain2
-                        .get(createHtmlHandler(ctx -> taskController.getTaskPage(ctx.getPathTokens().get("id"), ctx.getRequest().getQueryParams().get("action"))))
-                        .post(createHtmlHandler((ctx, form) -> taskController.postTaskPage(ctx.getPathTokens().get("id"), form.get("action"), form.get("title"), form.get("description"), form.get("done"))))
+                        .get(createHtmlHandler(ctx -> taskController.getTaskPage(getUserId(ctx), ctx.getPathTokens().get("id"), ctx.getRequest().getQueryParams().get("action"))))
+                        .post(createHtmlHandler((ctx, form) -> taskController.postTaskPage(getUserId(ctx), ctx.getPathTokens().get("id"), form.get("action"), form.get("title"), form.get("description"), form.get("done"), form.get("version"))))
                 ));
     }
 
-    private Handler createHandler(Function<Context, Object> callback) {
+    private static String getUserId(Context ctx) {
+        // validated for all routes below app/, see createRoutes()
+        String userId = ctx.getRequest().getHeaders().get(USER_HEADER);
+        return userId == null ? TaskRepository.DEFAULT_USER : userId;
+    }
+
+    private Handler instrument(Handler handler) {
+        // the route is the path pattern (e.g. app/rest/tasks/:id), so the number of time series is bounded
         return ctx -> {
+            long start = System.nanoTime();
+            String route = ctx.getPathBinding().getDescription();
+            ctx.onClose(outcome -> Metrics.recordRequest(route, ctx.getRequest().getMethod().getName(),
+                    outcome.getResponse().getStatus().getCode(), System.nanoTime() - start));
+            handler.handle(ctx);
+        };
+    }
+
+    private Handler createHandler(Function<Context, Object> callback) {
+        return instrument(ctx -> {
             Object result = callback.apply(ctx);
             ctx.render(result);
-        };
+        });
     }
 
     private <R> Handler createXmlHandler(Class<R> reqClass, BiFunction<Context, R, Object> callback) {
-        return ctx -> ctx.getRequest().getBody().map(reqBody -> deserializeXml(reqClass, reqBody.getText())).then(
-                reqBody -> handleXml(ctx, () -> callback.apply(ctx, reqBody)));
+        return instrument(ctx -> ctx.getRequest().getBody().map(reqBody -> xmlBinder.read(reqClass, reqBody.getInputStream()))
+                .onError(e -> handleError(ctx, e)).then(reqBody -> handleXml(ctx, () -> callback.apply(ctx, reqBody))));
     }
 
     private void handleXml(Context ctx, Supplier<Object> callback) {
         Object result = callback.get();
-        ctx.header("content-type", "text/xml").render(serializeXml(result));
+        ByteBuf buffer = ctx.get(ByteBufAllocator.class).buffer();
+        try {
+            xmlBinder.write(result, new ByteBufOutputStream(buffer));
+        } catch(RuntimeException e) {
+            buffer.release();
+            throw e;
+        }
+        compression.send(ctx, "text/xml", buffer);
     }
 
     private Handler createJsonHandler(Function<Context, Object> callback) {
-        return ctx -> handleJson(ctx, () -> callback.apply(ctx));
+        return instrument(ctx -> handleJson(ctx, () -> callback.apply(ctx)));
     }
 
     private <R> Handler createJsonHandler(Class<R> reqClass, BiFunction<Context, R, Object> callback) {
-        return ctx -> ctx.parse(fromJson(reqClass)).then(
-                reqBody -> handleJson(ctx, () -> callback.apply(ctx, reqBody)));
+        return instrument(ctx -> ctx.parse(fromJson(reqClass)).then(
+                reqBody -> handleJson(ctx, () -> callback.apply(ctx, reqBody))));
     }
 
     private void handleJson(Context ctx, Supplier<Object> callback) {
-        Object result = callback.get();
-        if(result == null) {
+        blockingExecutor.get(callback).flatMap(Application::await).onError(e -> handleError(ctx, e)).then(result -> {
+            if(result == null) {
+                ctx.notFound();
+            } else if(result instanceof String resultString) {
+                ctx.render(resultString);
+            } else if(result instanceof Page<?> resultPage) {
+                if(resultPage.getNext() != null) {
+                    ctx.header("link", "</" + ctx.getRequest().getPath() + "?limit=" + resultPage.getLimit() + "&after=" + resultPage.getNext() + ">; rel=\"next\"");
+                }
+                sendJson(ctx, resultPage.getItems());
+            } else {
+                sendJson(ctx, result);
+            }
+        });
+    }
+
+    private static Promise<Object> await(Object result) {
+        // e.g. a create queued for group commit: the blocking thread is released while the batch is written
+        if(result instanceof CompletionStage<?> resultStage) {
+            return Promise.async(downstream -> downstream.accept(resultStage));
+        }
+        return Promise.value(result);
+    }
+
+    private void sendJson(Context ctx, Object result) {
+        ByteBuf buffer = ctx.get(ByteBufAllocator.class).buffer();
+        try {
+            ctx.get(ObjectMapper.class).writeValue((DataOutput) new ByteBufOutputStream(buffer), result);
+        } catch(IOException | RuntimeException e) {
+            buffer.release();
+            throw new IllegalStateException("Failed to serialize", e);
+        }
+        compression.send(ctx, "application/json", buffer);
+    }
+
+    private void sendConditional(Context ctx, Validator validator, Runnable sender) {
+        // the validator is obtained first, so that a matching request is answered without building the body
+        if(validator == null) {
             ctx.notFound();
-        } else if(result instanceof String resultString) {
-            ctx.render(resultString);
+            return;
+        }
+        Response response = ctx.getResponse();
+        response.getHeaders().set("etag", validator.getEtag());
+        response.getHeaders().set("last-modified", validator.getLastModified());
+        response.getHeaders().set("cache-control", "no-cache");
+        if(validator.isNotModified(ctx.getRequest())) {
+            response.status(304).send();
         } else {
-            ctx.render(json(result));
+            sender.run();
+        }
+    }
+
+    private void postBatch(Context ctx) {
+        // the body is parsed by the blocking thread while it arrives, so it is never held in memory as a whole
+        EventLoop eventLoop = ctx.getExecution().getEventLoop();
+        var body = new PublisherInputStream(BODY_PREFETCH, eventLoop);
+        // subscribed from an execution of its own, because the execution of the request waits for the blocking thread
+        Execution.fork().eventLoop(eventLoop).onError(body::onError).start(execution -> ctx.getRequest().getBodyStream(batchMaxBytes).subscribe(body));
+        ObjectReader reader = ctx.get(ObjectMapper.class).readerFor(TaskBatchOperation.class);
+        blockingExecutor.open(release -> taskResource.postTasksBatch(getUserId(ctx), parseJsonArray(reader, body), release)).onError(e -> {
+            body.close();
+            handleError(ctx, e);
+        }).then(batch -> sendBatch(ctx, batch));
+    }
+
+    private void sendBatch(Context ctx, TaskBatch batch) {
+        // the results of a chunk are sent once it has been flushed, those of the last one after the commit;
+        // if a later chunk or the commit fails, the response is aborted, so the array remains incomplete
+        ObjectWriter writer = ctx.get(ObjectMapper.class).writer();
+        ByteBufAllocator allocator = ctx.get(ByteBufAllocator.class);
+        AtomicBoolean finished = new AtomicBoolean();
+        compression.sendStream(ctx, "application/json", Streams.flatYield(request -> finished.get() ? Promise.<ByteBuf>value(null) : blockingExecutor.resume(() -> {
+            List<TaskBatchResult> chunk = batch.nextChunk();
+            finished.set(chunk == null);
+            return serializeBatchResults(writer, allocator, chunk, request.getRequestNum() == 0);
+        })).wiretap(event -> {
+            if(event.isCancel() || event.isError()) {
+                blockingExecutor.cleanup(batch::abort);
+            }
+        }));
+    }
+
+    private static <T> JsonArrayIterator<T> parseJsonArray(ObjectReader reader, InputStream stream) {
+        // elements are bound one at a time while the caller iterates
+        try {
+            return new JsonArrayIterator<>(reader.readValues(stream));
+        } catch(IOException e) {
+            throw new IllegalArgumentException("Invalid JSON: " + e.getMessage(), e);
         }
     }
 
     private Handler createHtmlHandler(Function<Context, Object> callback) {
-        return ctx -> handleHtml(ctx, () -> callback.apply(ctx));
+        return instrument(ctx -> handleHtml(ctx, () -> callback.apply(ctx)));
     }
 
     private Handler createHtmlHandler(BiFunction<Context, Form, Object> callback) {
-        return ctx -> ctx.parse(Form.class).then(form -> handleHtml(ctx, () -> callback.apply(ctx, form)));
+        return instrument(ctx -> ctx.parse(Form.class).then(form -> handleHtml(ctx, () -> callback.apply(ctx, form))));
     }
 
     private void handleHtml(Context ctx, Supplier<Object> callback) {
-        Object result = callback.get();
-        if(result == null) {
-            ctx.notFound();
-        } else if(result instanceof Path resultPath) {
-            ctx.redirect(resultPath.toString());
+        blockingExecutor.get(callback).onError(e -> handleError(ctx, e)).then(result -> {
+            if(result == null) {
+                ctx.notFound();
+            } else if(result instanceof Path resultPath) {
+                ctx.redirect(resultPath.toString());
+            } else if(result instanceof ChunkedPage resultPage) {
+                sendChunked(ctx, resultPage);
+            } else {
+                compression.send(ctx, "text/html", Unpooled.wrappedBuffer(result.toString().getBytes(StandardCharsets.UTF_8)));
+            }
+        });
+    }
+
+    private void sendChunked(Context ctx, ChunkedPage page) {
+        ByteBufAllocator allocator = ctx.get(ByteBufAllocator.class);
+        compression.sendStream(ctx, "text/html", Streams.yield(request -> {
+            if(page.isFinished()) {
+                return null;
+            }
+            ByteBuf chunk = allocator.buffer(CHUNK_SIZE);
+            try {
+                page.writeChunk(new ByteBufOutputStream(chunk), CHUNK_SIZE);
+                return chunk;
+            } catch(RuntimeException e) {
+                chunk.release();
+                throw e;
+            }
+        }));
+    }
+
+    private void sendNdjson(Context ctx, TaskExport export) {
+        ObjectWriter writer = ctx.get(ObjectMapper.class).writer();
+        ByteBufAllocator allocator = ctx.get(ByteBufAllocator.class);
+        compression.sendStream(ctx, "application/x-ndjson", Streams.flatYield(request -> blockingExecutor.resume(() -> {
+            // the next chunk is only read from the database when the client has consumed the previous one
+            List<TaskEntity> chunk = export.nextChunk(EXPORT_CHUNK_SIZE);
+            return chunk == null ? null : serializeNdjson(writer, allocator, chunk);
+        })).wiretap(event -> {
+            if(event.isCancel() || event.isError()) {
+                blockingExecutor.cleanup(export::close);
+            }
+        }));
+    }
+
+    private void sendEvents(Context ctx, Publisher<TaskChangeEvent> events) {
+        // Server-Sent Events; an idle subscriber has no pending work on the event loop
+        ObjectWriter writer = ctx.get(ObjectMapper.class).writer();
+        Response response = ctx.getResponse();
+        response.getHeaders().set("cache-control", "no-cache");
+        response.contentType("text/event-stream");
+        response.sendStream(Streams.bindExec(events).map(event -> Unpooled.wrappedBuffer(event.getEncoded(e -> serializeEvent(writer, e)))));
+    }
+
+    private static byte[] serializeEvent(ObjectWriter writer, TaskChangeEvent event) {
+        if(event.getType() == TaskChangeEvent.Type.HEARTBEAT) {
+            return ":\n\n".getBytes(StandardCharsets.UTF_8); // a comment, ignored by clients
+        }
+        try {
+            return ("id: " + event.getSequence() + "\nevent: " + event.getType().name().toLowerCase() + "\ndata: "
+                    + writer.writeValueAsString(event) + "\n\n").getBytes(StandardCharsets.UTF_8);
+        } catch(IOException e) {
+            throw new IllegalStateException("Failed to serialize", e);
+        }
+    }
+
+    private static ByteBuf serializeBatchResults(ObjectWriter writer, ByteBufAllocator allocator, List<TaskBatchResult> results, boolean first) {
+        // a part of a JSON array: the opening bracket before the first results, the closing one after the last
+        ByteBuf buffer = allocator.buffer();
+        try {
+            var stream = new ByteBufOutputStream(buffer);
+            if(first) {
+                stream.writeByte('[');
+            }
+            if(results == null) {
+                stream.writeByte(']');
+                return buffer;
+            }
+            for(TaskBatchResult result : results) {
+                if(result.getIndex() > 0) {
+                    stream.writeByte(',');
+                }
+                writer.writeValue((DataOutput) stream, result);
+            }
+            return buffer;
+        } catch(IOException | RuntimeException e) {
+            buffer.release();
+            throw new IllegalStateException("Failed to serialize", e);
+        }
+    }
+
+    private static ByteBuf serializeNdjson(ObjectWriter writer, ByteBufAllocator allocator, List<?> objects) {
+        ByteBuf buffer = allocator.buffer();
+        try {
+            var stream = new ByteBufOutputStream(buffer);
+            for(Object object : objects) {
+                writer.writeValue((DataOutput) stream, object);
+                stream.writeByte('\n');
+            }
+            return buffer;
+        } catch(IOException | RuntimeException e) {
+            buffer.release();
+            throw new IllegalStateException("Failed to serialize", e);
+        }
+    }
+
+    private void handleError(Context ctx, Throwable e) {
+        if(e instanceof RejectedExecutionException) {
+            logger.warn("Request rejected: " + e.getMessage()); // e.g. the blocking executor is saturated
+            ctx.getResponse().status(503).send();
+        } else if(isCausedBy(e, RequestBodyTooLargeException.class)) {
+            logger.info("Request body too large: " + e.getMessage());
+            ctx.clientError(413);
+        } else if(e instanceof IllegalArgumentException) {
+            logger.info("Bad request: " + e.getMessage());
+            ctx.clientError(400);
+        } else if(isConflict(e)) {
+            logger.info("Precondition failed: " + e.getMessage());
+            ctx.clientError(412);
         } else {
-            ctx.header("content-type", "text/html").render(result);
+            ctx.error(e);
         }
     }
 
-    private static String serializeXml(Object object) {
-        var buffer = new StringWriter();
-        JAXB.marshal(object, buffer);
-        return buffer.toString();
+    private static boolean isConflict(Throwable e) {
+        // Hibernate reports a failed version check at commit wrapped in a RollbackException
+        return isCausedBy(e, OptimisticLockException.class) || isCausedBy(e, StaleStateException.class);
+    }
+
+    private static boolean isCausedBy(Throwable e, Class<? extends Throwable> type) {
+        for(Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if(type.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    private static <T> T deserializeXml(Class<T> clazz, String text) {
-        return JAXB.unmarshal(new StringReader(text), clazz);
+    private static class JsonArrayIterator<T> implements Iterator<T>, AutoCloseable {
+
+        private final MappingIterator<T> iterator;
+
+        private JsonArrayIterator(MappingIterator<T> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                return iterator.hasNextValue();
+            } catch(IOException e) {
+                throw new IllegalArgumentException("Invalid JSON: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public T next() {
+            try {
+                return iterator.nextValue();
+            } catch(IOException e) {
+                throw new IllegalArgumentException("Invalid JSON: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            iterator.close(); // also the source, e.g. the body of the request
+        }
     }
 }
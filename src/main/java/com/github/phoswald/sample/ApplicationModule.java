@@ -1,19 +1,34 @@
 package com.github.phoswald.sample;
 
 import java.util.HashMap;
-import java.util.function.Supplier;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import com.github.phoswald.sample.sample.EchoRequest;
+import com.github.phoswald.sample.sample.EchoResponse;
 import com.github.phoswald.sample.sample.SampleController;
 import com.github.phoswald.sample.sample.SampleResource;
+import com.github.phoswald.sample.task.TaskCache;
+import com.github.phoswald.sample.task.TaskChangePublisher;
 import com.github.phoswald.sample.task.TaskController;
-import com.github.phoswald.sample.task.TaskRepository;
+import com.github.phoswald.sample.task.TaskRepositoryFactory;
 import com.github.phoswald.sample.task.TaskResource;
+import com.github.phoswald.sample.task.TaskSearchIndex;
+import com.github.phoswald.sample.task.TaskWriter;
+import com.github.phoswald.sample.utils.BlockingExecutor;
 import com.github.phoswald.sample.utils.ConfigProvider;
+import com.github.phoswald.sample.utils.HashRing;
+import com.github.phoswald.sample.utils.PoolMetrics;
+import com.github.phoswald.sample.utils.XmlBinder;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.Persistence;
 
-public class ApplicationModule {
+public class ApplicationModule implements AutoCloseable {
 
     static {
         // Hibernate: auto-detection falls back to JUL, slf4j is only used if logback is
@@ -21,17 +36,61 @@ public class ApplicationModule {
         System.setProperty("org.jboss.logging.provider", "slf4j");
     }
 
-    private EntityManagerFactory emf = null;
+    private final Map<Integer, EntityManagerFactory> emfs = new ConcurrentHashMap<>(); // by shard
+    private final List<HikariDataSource> dataSources = new CopyOnWriteArrayList<>(); // not closed by Hibernate
+    private HashRing hashRing = null;
+    private BlockingExecutor blockingExecutor = null;
+    private PoolMetrics poolMetrics = null;
+    private TaskCache taskCache = null;
+    private TaskChangePublisher taskChangePublisher = null;
+    private TaskWriter taskWriter = null;
+    private TaskSearchIndex taskSearchIndex = null;
+    private XmlBinder xmlBinder = null;
 
     public Application getApplication() {
-        return new Application(getConfigProvider(), //
-                getSampleResource(), getSampleController(), getTaskResource(), getTaskController());
+        return new Application(getConfigProvider(), getBlockingExecutor(), getPoolMetrics(), getXmlBinder(), //
+                getSampleResource(), getSampleController(), getTaskResource(), getTaskController(), this);
+    }
+
+    @Override
+    public void close() {
+        // after the server has stopped: first the threads that may still use the databases, then the databases
+        if (taskSearchIndex != null) {
+            taskSearchIndex.close();
+        }
+        if (taskWriter != null) {
+            taskWriter.close();
+        }
+        if (taskChangePublisher != null) {
+            taskChangePublisher.close();
+        }
+        if (blockingExecutor != null) {
+            blockingExecutor.close();
+        }
+        emfs.values().forEach(EntityManagerFactory::close);
+        emfs.clear();
+        dataSources.forEach(HikariDataSource::close);
+        dataSources.clear();
     }
 
     public ConfigProvider getConfigProvider() {
         return new ConfigProvider();
     }
 
+    public BlockingExecutor getBlockingExecutor() {
+        if (blockingExecutor == null) {
+            blockingExecutor = new BlockingExecutor(getConfigProvider());
+        }
+        return blockingExecutor;
+    }
+
+    public XmlBinder getXmlBinder() {
+        if (xmlBinder == null) {
+            xmlBinder = new XmlBinder(EchoRequest.class, EchoResponse.class);
+        }
+        return xmlBinder;
+    }
+
     public SampleResource getSampleResource() {
         return new SampleResource(getConfigProvider());
     }
@@ -41,27 +100,97 @@ public class ApplicationModule {
     }
 
     public TaskResource getTaskResource() {
-        return new TaskResource(getTaskRepositoryFactory());
+        return new TaskResource(getTaskRepositoryFactory(), getTaskWriter(), getTaskSearchIndex());
     }
 
     public TaskController getTaskController() {
-        return new TaskController(getTaskRepositoryFactory());
+        return new TaskController(getTaskRepositoryFactory(), getTaskWriter(), getTaskSearchIndex());
+    }
+
+    public TaskRepositoryFactory getTaskRepositoryFactory() {
+        return new TaskRepositoryFactory(this::getEntityManagerFactory, getHashRing(), getTaskCache(), getTaskChangePublisher());
+    }
+
+    public TaskWriter getTaskWriter() {
+        if (taskWriter == null) {
+            taskWriter = new TaskWriter(getConfigProvider(), getTaskRepositoryFactory());
+        }
+        return taskWriter;
+    }
+
+    public TaskSearchIndex getTaskSearchIndex() {
+        if (taskSearchIndex == null) {
+            taskSearchIndex = new TaskSearchIndex(getTaskRepositoryFactory()); // rebuilt when the application starts
+        }
+        return taskSearchIndex;
+    }
+
+    public TaskCache getTaskCache() {
+        if (taskCache == null) {
+            taskCache = new TaskCache(getConfigProvider());
+        }
+        return taskCache;
+    }
+
+    public TaskChangePublisher getTaskChangePublisher() {
+        if (taskChangePublisher == null) {
+            taskChangePublisher = new TaskChangePublisher(getConfigProvider());
+        }
+        return taskChangePublisher;
+    }
+
+    public PoolMetrics getPoolMetrics() {
+        if (poolMetrics == null) {
+            poolMetrics = new PoolMetrics();
+        }
+        return poolMetrics;
     }
 
-    public Supplier<TaskRepository> getTaskRepositoryFactory() {
-        return () -> new TaskRepository(getEntityManagerFactory());
+    public HashRing getHashRing() {
+        if (hashRing == null) {
+            hashRing = new HashRing(Integer.parseInt(getConfigProvider().getConfigProperty("app.jdbc.shards").orElse("1")));
+        }
+        return hashRing;
     }
 
     public EntityManagerFactory getEntityManagerFactory() {
-        if (emf == null) {
-            var config = getConfigProvider();
-            var props = new HashMap<>();
-            props.put("jakarta.persistence.jdbc.url", config.getConfigProperty("app.jdbc.url")
-                    .orElse("jdbc:h2:mem:test" + hashCode() + ";DB_CLOSE_DELAY=-1"));
-            props.put("jakarta.persistence.jdbc.user", config.getConfigProperty("app.jdbc.username").orElse("sa"));
-            props.put("jakarta.persistence.jdbc.password", config.getConfigProperty("app.jdbc.password").orElse("sa"));
-            emf = Persistence.createEntityManagerFactory("taskDS", props);
+        return getEntityManagerFactory(0);
+    }
+
+    public EntityManagerFactory getEntityManagerFactory(int shard) {
+        // at most one factory per shard, also if the background rebuild of the search index races the first request
+        return emfs.computeIfAbsent(shard, this::createEntityManagerFactory);
+    }
+
+    public EntityManagerFactory createEntityManagerFactory(int shard) {
+        var config = getConfigProvider();
+        var props = new HashMap<>();
+        props.put("jakarta.persistence.nonJtaDataSource", createDataSource(config, shard));
+        props.put("hibernate.jdbc.batch_size", config.getConfigProperty("app.jdbc.batch.size").orElse("50"));
+        props.put("hibernate.jdbc.fetch_size", config.getConfigProperty("app.jdbc.fetch.size").orElse("100"));
+        return Persistence.createEntityManagerFactory("taskDS", props);
+    }
+
+    private HikariDataSource createDataSource(ConfigProvider config, int shard) {
+        // every shard is a database of its own, e.g. app.jdbc.url=jdbc:h2:./databases/task-db-{shard}
+        String url = config.getConfigProperty("app.jdbc.url").orElse("jdbc:h2:mem:test" + hashCode() + "-{shard};DB_CLOSE_DELAY=-1");
+        if (!url.contains("{shard}") && (shard > 0 || getHashRing().getShards() > 1)) {
+            throw new IllegalStateException("With app.jdbc.shards > 1, app.jdbc.url must contain {shard}: " + url);
         }
-        return emf;
+        var hikari = new HikariConfig();
+        hikari.setPoolName("taskDS-" + shard);
+        hikari.setJdbcUrl(url.replace("{shard}", Integer.toString(shard)));
+        hikari.setUsername(config.getConfigProperty("app.jdbc.username").orElse("sa"));
+        hikari.setPassword(config.getConfigProperty("app.jdbc.password").orElse("sa"));
+        hikari.setMaximumPoolSize(Integer.parseInt(config.getConfigProperty("app.jdbc.pool.size").orElse("10")));
+        hikari.setMinimumIdle(Integer.parseInt(config.getConfigProperty("app.jdbc.pool.minidle").orElse("2")));
+        hikari.setConnectionTimeout(Long.parseLong(config.getConfigProperty("app.jdbc.pool.timeout").orElse("30000")));
+        hikari.setIdleTimeout(Long.parseLong(config.getConfigProperty("app.jdbc.pool.idletimeout").orElse("600000")));
+        hikari.setMaxLifetime(Long.parseLong(config.getConfigProperty("app.jdbc.pool.maxlifetime").orElse("1800000")));
+        hikari.setLeakDetectionThreshold(Long.parseLong(config.getConfigProperty("app.jdbc.pool.leakthreshold").orElse("0")));
+        hikari.setMetricsTrackerFactory(getPoolMetrics());
+        var dataSource = new HikariDataSource(hikari);
+        dataSources.add(dataSource);
+        return dataSource;
     }
 }
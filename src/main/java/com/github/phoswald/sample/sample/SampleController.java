@@ -10,6 +10,10 @@ public class SampleController {
         this.sampleConfig = config.getConfigProperty("app.sample.config").orElse("Undefined");
     }
 
+    public void warmUpTemplates() {
+        getSamplePage();
+    }
+
     public String getSamplePage() {
         return new SampleView().render(new SampleViewModel(sampleConfig));
     }
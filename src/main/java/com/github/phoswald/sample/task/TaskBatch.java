@@ -0,0 +1,115 @@
+package com.github.phoswald.sample.task;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/*
+ * A batch of operations in one transaction, executed a chunk at a time while the operations are parsed, so neither
+ * the operations nor their results are held all at once. The first chunk is executed when the batch is opened,
+ * so a failure there is reported with the status of the response. The last chunk is returned after the commit.
+ */
+public class TaskBatch implements AutoCloseable {
+
+    private final TaskRepository repository;
+    private final Iterator<TaskBatchOperation> operations;
+    private final Runnable onClose;
+    private int index;
+    private List<TaskBatchResult> pending;
+    private boolean closed;
+
+    TaskBatch(TaskRepository repository, Iterator<TaskBatchOperation> operations, Runnable onClose) {
+        this.repository = repository;
+        this.operations = operations;
+        this.onClose = onClose;
+        this.pending = executeChunk();
+    }
+
+    public synchronized List<TaskBatchResult> nextChunk() {
+        if(pending != null) {
+            List<TaskBatchResult> chunk = pending;
+            pending = null;
+            return chunk;
+        }
+        return closed ? null : executeChunk();
+    }
+
+    private List<TaskBatchResult> executeChunk() {
+        try {
+            List<TaskBatchResult> chunk = new ArrayList<>(TaskResource.BATCH_FLUSH_SIZE);
+            while(chunk.size() < TaskResource.BATCH_FLUSH_SIZE && operations.hasNext()) {
+                chunk.add(executeOperation(index++, operations.next()));
+            }
+            repository.flushAndClear(); // keeps the persistence context small
+            if(!operations.hasNext()) {
+                close(); // commits
+            }
+            return chunk;
+        } catch(RuntimeException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    private TaskBatchResult executeOperation(int index, TaskBatchOperation operation) {
+        if("create".equals(operation.getOp())) {
+            TaskEntity entity = new TaskEntity();
+            entity.setNewTaskId();
+            entity.setTimestamp(Instant.now());
+            entity.setTitle(operation.getTitle());
+            entity.setDescription(operation.getDescription());
+            entity.setDone(operation.isDone());
+            repository.createTask(entity);
+            return new TaskBatchResult(index, entity.getTaskId(), 200);
+        }
+        if("update".equals(operation.getOp()) || "delete".equals(operation.getOp())) {
+            TaskEntity entity = repository.selectTaskById(operation.getTaskId());
+            if(entity == null) {
+                return new TaskBatchResult(index, operation.getTaskId(), 404);
+            }
+            if("delete".equals(operation.getOp())) {
+                repository.deleteTask(entity);
+            } else {
+                entity.setTimestamp(Instant.now());
+                entity.setTitle(operation.getTitle());
+                entity.setDescription(operation.getDescription());
+                entity.setDone(operation.isDone());
+                repository.updateTask(entity);
+            }
+            return new TaskBatchResult(index, entity.getTaskId(), 200);
+        }
+        return new TaskBatchResult(index, operation.getTaskId(), 400);
+    }
+
+    public synchronized void abort() {
+        // e.g. the client has gone away before the end
+        if(!closed) {
+            repository.setRollbackOnly();
+            close();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if(!closed) {
+            closed = true;
+            try {
+                repository.close();
+            } finally {
+                onClose.run(); // the connection has been returned
+                if(operations instanceof AutoCloseable source) { // e.g. the parser of the request body
+                    closeSource(source);
+                }
+            }
+        }
+    }
+
+    private static void closeSource(AutoCloseable source) {
+        try {
+            source.close();
+        } catch(Exception e) {
+            throw new IllegalStateException("Failed to close", e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.phoswald.sample.task;
+
+public class TaskBatchResult {
+
+    private final int index;
+    private final String taskId;
+    private final int status;
+
+    public TaskBatchResult(int index, String taskId, int status) {
+        this.index = index;
+        this.taskId = taskId;
+        this.status = status;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getTaskId() {
+        return taskId;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.phoswald.sample.task;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.phoswald.sample.utils.CacheStatistics;
+import com.github.phoswald.sample.utils.ConfigProvider;
+import com.github.phoswald.sample.utils.LruCache;
+import com.github.phoswald.sample.utils.Validator;
+
+public class TaskCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskCache.class);
+
+    private final LruCache<UUID, TaskEntity> entities;
+    private final LruCache<String, List<TaskEntity>> firstPages;
+    private final String instanceId = Long.toHexString(System.currentTimeMillis()); // versions restart at 0
+    private volatile ListVersion listVersion = new ListVersion(0, Instant.now());
+
+    public TaskCache(ConfigProvider config) {
+        int size = Integer.parseInt(config.getConfigProperty("app.cache.size").orElse("10000"));
+        long ttl = Long.parseLong(config.getConfigProperty("app.cache.ttl").orElse("60000"));
+        logger.info("Task cache: size=" + size + ", ttl=" + ttl);
+        entities = new LruCache<>(size, ttl);
+        firstPages = new LruCache<>(256, ttl); // keyed by user and limit
+    }
+
+    LruCache<UUID, TaskEntity> getEntities() {
+        return entities;
+    }
+
+    LruCache<String, List<TaskEntity>> getFirstPages() {
+        return firstPages;
+    }
+
+    void invalidateList() {
+        synchronized(firstPages) {
+            firstPages.invalidateAll();
+            listVersion = new ListVersion(firstPages.getGeneration(), Instant.now());
+        }
+    }
+
+    public Validator getListValidator(String userId) {
+        // covers all changes committed through this instance, which owns the databases;
+        // the user is part of the tag, because users see different lists under the same URL
+        ListVersion version = listVersion;
+        return Validator.weak(instanceId + "-" + version.generation() + "-" + userId, version.timestamp());
+    }
+
+    public Map<String, CacheStatistics> getStatistics() {
+        return Map.of("entities", entities.getStatistics(), "firstPages", firstPages.getStatistics());
+    }
+
+    private record ListVersion(long generation, Instant timestamp) { }
+}
@@ -0,0 +1,59 @@
+package com.github.phoswald.sample.task;
+
+import java.util.function.Function;
+
+public class TaskChangeEvent {
+
+    public enum Type {
+        CREATED, UPDATED, DELETED,
+        OVERFLOW, // events have been dropped for this subscriber, the client should reload
+        HEARTBEAT // keeps idle connections alive, never sent to listeners
+    }
+
+    static final TaskChangeEvent HEARTBEAT = new TaskChangeEvent(0, Type.HEARTBEAT, null, null, null);
+
+    private final long sequence;
+    private final Type type;
+    private final String userId;
+    private final String taskId;
+    private final Long version;
+    private volatile byte[] encoded;
+
+    TaskChangeEvent(long sequence, Type type, String userId, String taskId, Long version) {
+        this.sequence = sequence;
+        this.type = type;
+        this.userId = userId;
+        this.taskId = taskId;
+        this.version = version;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getTaskId() {
+        return taskId;
+    }
+
+    public Long getVersion() {
+        return version; // the committed version, clients load the task if they need more
+    }
+
+    public byte[] getEncoded(Function<TaskChangeEvent, byte[]> encoder) {
+        // the same event is sent to all subscribers, encode it only once (or rarely twice, in a race)
+        byte[] result = encoded;
+        if(result == null) {
+            result = encoder.apply(this);
+            encoded = result;
+        }
+        return result;
+    }
+}
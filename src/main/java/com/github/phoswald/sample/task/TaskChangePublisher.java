@@ -0,0 +1,246 @@
+package com.github.phoswald.sample.task;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.phoswald.sample.utils.ConfigProvider;
+
+/*
+ * Distributes committed task changes in-process. Listeners are called synchronously by the committing thread,
+ * subscribers (change feed clients) have a bounded buffer each, so a slow client cannot hold back the others.
+ * An idle subscriber is only an entry in a set, it costs no thread and no timer of its own.
+ */
+public class TaskChangePublisher implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskChangePublisher.class);
+
+    public enum Policy {
+        COALESCE, // keep only the latest change per task, drop the oldest task if still full
+        DROP // keep all changes in order, drop new changes if full
+    }
+
+    private final int bufferSize;
+    private final Policy policy;
+    private final AtomicLong sequence = new AtomicLong();
+    private final List<Consumer<List<TaskChangeEvent>>> listeners = new CopyOnWriteArrayList<>();
+    private final Set<ChangeSubscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler;
+
+    public TaskChangePublisher(ConfigProvider config) {
+        bufferSize = Integer.parseInt(config.getConfigProperty("app.changes.buffer").orElse("256"));
+        policy = Policy.valueOf(config.getConfigProperty("app.changes.policy").orElse("coalesce").toUpperCase());
+        long heartbeat = Long.parseLong(config.getConfigProperty("app.changes.heartbeat").orElse("30000"));
+        logger.info("Task changes: bufferSize=" + bufferSize + ", policy=" + policy + ", heartbeat=" + heartbeat);
+        if(heartbeat > 0) {
+            // a single timer for all subscribers, detects closed connections and keeps proxies from timing out
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "task-changes-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(this::sendHeartbeat, heartbeat, heartbeat, TimeUnit.MILLISECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        // the open feeds end with their connections, when the server stops
+        if(scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public void addListener(Consumer<List<TaskChangeEvent>> listener) {
+        // called with the changes of one commit
+        listeners.add(listener);
+    }
+
+    public Publisher<TaskChangeEvent> subscribe(String userId) {
+        return subscriber -> {
+            var subscription = new ChangeSubscription(subscriber, userId);
+            subscriptions.add(subscription);
+            subscriber.onSubscribe(subscription);
+        };
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    TaskChangeEvent createEvent(TaskChangeEvent.Type type, String userId, String taskId, Long version) {
+        return new TaskChangeEvent(sequence.incrementAndGet(), type, userId, taskId, version);
+    }
+
+    void publish(List<TaskChangeEvent> events) {
+        for(Consumer<List<TaskChangeEvent>> listener : listeners) {
+            try {
+                listener.accept(events);
+            } catch(RuntimeException e) {
+                logger.warn("Task change listener failed", e);
+            }
+        }
+        for(TaskChangeEvent event : events) {
+            for(ChangeSubscription subscription : subscriptions) {
+                subscription.offer(event);
+            }
+        }
+    }
+
+    private void sendHeartbeat() {
+        for(ChangeSubscription subscription : subscriptions) {
+            subscription.offerHeartbeat();
+        }
+    }
+
+    private class ChangeSubscription implements Subscription {
+
+        private final Subscriber<? super TaskChangeEvent> subscriber;
+        private final String userId;
+        private final Map<String, TaskChangeEvent> latest = new LinkedHashMap<>(); // COALESCE
+        private final Queue<TaskChangeEvent> queue = new ArrayDeque<>(); // DROP
+        private long demand;
+        private boolean overflow;
+        private boolean heartbeat;
+        private boolean draining;
+        private boolean cancelled;
+
+        private ChangeSubscription(Subscriber<? super TaskChangeEvent> subscriber, String userId) {
+            this.subscriber = subscriber;
+            this.userId = userId;
+        }
+
+        private void offer(TaskChangeEvent event) {
+            if(!userId.equals(event.getUserId())) {
+                return; // the feed of a user only contains the user's own tasks
+            }
+            synchronized(this) {
+                if(cancelled) {
+                    return;
+                }
+                if(policy == Policy.COALESCE) {
+                    coalesce(event);
+                } else if(queue.size() < bufferSize) {
+                    queue.add(event);
+                } else {
+                    overflow = true;
+                }
+            }
+            drain();
+        }
+
+        private void coalesce(TaskChangeEvent event) {
+            TaskChangeEvent previous = latest.remove(event.getTaskId());
+            if(previous != null && previous.getType() == TaskChangeEvent.Type.CREATED) {
+                if(event.getType() == TaskChangeEvent.Type.DELETED) {
+                    return; // the subscriber has never seen this task
+                }
+                event = new TaskChangeEvent(event.getSequence(), TaskChangeEvent.Type.CREATED, event.getUserId(), event.getTaskId(), event.getVersion());
+            }
+            if(latest.size() >= bufferSize) {
+                Iterator<String> eldest = latest.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                overflow = true;
+            }
+            latest.put(event.getTaskId(), event);
+        }
+
+        private void offerHeartbeat() {
+            synchronized(this) {
+                if(!cancelled && isEmpty()) {
+                    heartbeat = true;
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if(n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Non-positive request: " + n));
+                return;
+            }
+            synchronized(this) {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized(this) {
+                cancelled = true;
+                latest.clear();
+                queue.clear();
+            }
+            subscriptions.remove(this);
+        }
+
+        private void drain() {
+            // signals are serialized: only one thread at a time calls onNext(), the others just leave their events
+            synchronized(this) {
+                if(draining) {
+                    return;
+                }
+                draining = true;
+            }
+            while(true) {
+                TaskChangeEvent event;
+                synchronized(this) {
+                    if(cancelled || demand == 0 || (!overflow && !heartbeat && isEmpty())) {
+                        draining = false;
+                        return;
+                    }
+                    event = poll();
+                    demand--;
+                }
+                subscriber.onNext(event);
+            }
+        }
+
+        private boolean isEmpty() {
+            return latest.isEmpty() && queue.isEmpty();
+        }
+
+        private TaskChangeEvent poll() {
+            if(overflow) {
+                overflow = false;
+                heartbeat = false;
+                return new TaskChangeEvent(sequence.get(), TaskChangeEvent.Type.OVERFLOW, userId, null, null);
+            }
+            if(!isEmpty()) {
+                heartbeat = false;
+                if(policy == Policy.COALESCE) {
+                    Iterator<TaskChangeEvent> eldest = latest.values().iterator();
+                    TaskChangeEvent event = eldest.next();
+                    eldest.remove();
+                    return event;
+                }
+                return queue.poll();
+            }
+            heartbeat = false;
+            return TaskChangeEvent.HEARTBEAT;
+        }
+    }
+}
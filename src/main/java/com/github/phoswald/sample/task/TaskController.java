@@ -4,51 +4,94 @@ import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.List;
 import java.util.Objects;
-import java.util.function.Supplier;
+import java.util.concurrent.CompletionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.phoswald.sample.utils.ChunkedPage;
+import com.github.phoswald.sample.utils.Validator;
+
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.RollbackException;
+
 public class TaskController {
 
     private static final Logger logger = LoggerFactory.getLogger(TaskController.class);
 
-    private final Supplier<TaskRepository> repositoryFactory;
+    private final TaskRepositoryFactory repositoryFactory;
+    private final TaskWriter writer;
+    private final TaskSearchIndex searchIndex;
 
-    public TaskController(Supplier<TaskRepository> repositoryFactory) {
+    public TaskController(TaskRepositoryFactory repositoryFactory, TaskWriter writer, TaskSearchIndex searchIndex) {
         this.repositoryFactory = repositoryFactory;
+        this.writer = writer;
+        this.searchIndex = searchIndex;
+    }
+
+    public void warmUpTemplates() {
+        TaskEntity entity = new TaskEntity();
+        entity.setTimestamp(Instant.now());
+        TaskViewModel viewModel = new TaskViewModel(entity);
+        new TaskListView().render(new TaskListViewModel(List.of(viewModel), null, null));
+        new TaskView().render(viewModel);
+        new TaskEditView().render(viewModel);
+    }
+
+    public Validator getListValidator(String userId) {
+        return repositoryFactory.getCache().getListValidator(userId);
+    }
+
+    public ChunkedPage getTasksPage(String userId, String after) {
+        int limit = TaskResource.DEFAULT_LIMIT;
+        try(TaskRepository repository = repositoryFactory.openReadOnly(userId)) {
+            List<TaskEntity> entities = repository.selectTasks(after == null ? null : TaskCursor.decode(after), limit);
+            TaskListViewModel viewModel = new TaskListViewModel(TaskViewModel.newList(entities), TaskResource.nextCursor(entities, limit), null);
+            return new TaskListView().renderChunked(viewModel);
+        }
     }
 
-    public String getTasksPage() {
-        try(TaskRepository repository = repositoryFactory.get()) {
-            List<TaskEntity> entities = repository.selectAllTasks();
-            List<TaskViewModel> viewModel = TaskViewModel.newList(entities);
-            return new TaskListView().render(viewModel);
+    public ChunkedPage searchTasksPage(String userId, String query) {
+        if (query.isBlank()) {
+            return getTasksPage(userId, null);
+        }
+        try(TaskRepository repository = repositoryFactory.openReadOnly(userId)) {
+            List<TaskEntity> entities = repository.selectTasksByIds(searchIndex.search(userId, query, TaskResource.DEFAULT_LIMIT));
+            TaskListViewModel viewModel = new TaskListViewModel(TaskViewModel.newList(entities), null, query);
+            return new TaskListView().renderChunked(viewModel);
         }
     }
 
-    public String postTasksPage( //
+    public ChunkedPage postTasksPage( //
+            String userId, //
             String title, //
             String description) {
         logger.info("Received from with title=" + title + ", description=" + description);
-        try(TaskRepository repository = repositoryFactory.get()) {
-            TaskEntity entity = new TaskEntity();
-            entity.setNewTaskId();
-            entity.setUserId("guest");
-            entity.setTimestamp(Instant.now());
-            entity.setTitle(title);
-            entity.setDescription(description);
-            entity.setDone(false);
-            repository.createTask(entity);
+        TaskEntity entity = new TaskEntity();
+        entity.setNewTaskId();
+        entity.setUserId(userId);
+        entity.setTimestamp(Instant.now());
+        entity.setTitle(title);
+        entity.setDescription(description);
+        entity.setDone(false);
+        try {
+            // the list is rendered afterwards, so this (blocking) thread waits for the commit
+            writer.create(entity).toCompletableFuture().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
         }
-        return getTasksPage();
+        return getTasksPage(userId, null);
     }
 
     public String getTaskPage( //
+            String userId, //
             String id, //
             String action) {
-        try(TaskRepository repository = repositoryFactory.get()) {
+        try(TaskRepository repository = repositoryFactory.openReadOnly(userId)) {
             TaskEntity entity = repository.selectTaskById(id);
+            if (entity == null) {
+                return null; // also a task of another user
+            }
             TaskViewModel viewModel = new TaskViewModel(entity);
             if (Objects.equals(action, "edit")) {
                 return new TaskEditView().render(viewModel);
@@ -59,26 +102,56 @@ public class TaskController {
     }
 
     public Object postTaskPage( //
+            String userId, //
             String id, //
             String action, //
             String title, //
             String description, //
-            String done) {
-        logger.info("Received from with id=" + id + ", action=" + action + ", title=" + title + ", description=" + description + ", done=" + done);
-        try(TaskRepository repository = repositoryFactory.get()) {
+            String done, //
+            String version) {
+        logger.info("Received from with id=" + id + ", action=" + action + ", title=" + title + ", description=" + description + ", done=" + done + ", version=" + version);
+        try {
+            try(TaskRepository repository = repositoryFactory.openReadWrite(userId)) {
+                TaskEntity entity = repository.selectTaskById(id);
+                if (entity == null) {
+                    return null;
+                }
+                TaskResource.checkVersion(entity, null, version == null || version.isEmpty() ? null : Long.valueOf(version));
+                if (Objects.equals(action, "delete")) {
+                    repository.deleteTask(entity);
+                    return Paths.get("/app/pages/tasks");
+                }
+                if (Objects.equals(action, "store")) {
+                    entity.setTimestamp(Instant.now());
+                    entity.setTitle(title);
+                    entity.setDescription(description);
+                    entity.setDone(Objects.equals(done, "on"));
+                    repository.updateTask(entity);
+                    repository.updateChanges();
+                }
+            }
+        } catch (OptimisticLockException e) {
+            return getConflictPage(userId, id, e);
+        } catch (RollbackException e) {
+            if (!(e.getCause() instanceof OptimisticLockException)) {
+                throw e;
+            }
+            return getConflictPage(userId, id, e); // the version check failed when committing
+        }
+        return getTaskPage(userId, id, null);
+    }
+
+    private Object getConflictPage(String userId, String id, RuntimeException e) {
+        // someone else has changed the task since the form was rendered: show the current state again
+        logger.info("Conflicting change of task " + id + ": " + e.getMessage());
+        try(TaskRepository repository = repositoryFactory.openReadOnly(userId)) {
             TaskEntity entity = repository.selectTaskById(id);
-            if (Objects.equals(action, "delete")) {
-                repository.deleteTask(entity);
+            if (entity == null) {
                 return Paths.get("/app/pages/tasks");
             }
-            if (Objects.equals(action, "store")) {
-                entity.setTimestamp(Instant.now());
-                entity.setTitle(title);
-                entity.setDescription(description);
-                entity.setDone(Objects.equals(done, "on"));
-                repository.updateChanges();
-            }
+            TaskViewModel viewModel = new TaskViewModel(entity);
+            viewModel.message = "The task has been changed by someone else in the meantime, your changes have not been stored.";
+            return new TaskEditView().render(viewModel);
         }
-        return getTaskPage(id, null);
     }
 }
@@ -0,0 +1,49 @@
+package com.github.phoswald.sample.task;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+
+public class TaskCursor {
+
+    private final Instant timestamp;
+    private final UUID taskId;
+
+    private TaskCursor(Instant timestamp, UUID taskId) {
+        this.timestamp = timestamp;
+        this.taskId = taskId;
+    }
+
+    static TaskCursor of(TaskEntity entity) {
+        return new TaskCursor(entity.getTimestamp(), entity.getTaskUuid());
+    }
+
+    public static TaskCursor decode(String text) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(text), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(' ');
+            UUID taskId = TaskEntity.parseTaskId(decoded.substring(separator + 1));
+            if(taskId == null) {
+                throw new IllegalArgumentException("Invalid cursor: " + text);
+            }
+            return new TaskCursor(Instant.parse(decoded.substring(0, separator)), taskId);
+        } catch (DateTimeParseException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + text, e);
+        }
+    }
+
+    public String encode() {
+        String text = timestamp + " " + taskId.toString().replace("-", "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    Instant getTimestamp() {
+        return timestamp;
+    }
+
+    UUID getTaskId() {
+        return taskId;
+    }
+}
@@ -6,43 +6,91 @@ import java.util.UUID;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.NamedQueries;
 import jakarta.persistence.NamedQuery;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 
 @Entity
-@Table(name = "task_")
+@Table(name = "task_", indexes = { //
+        @Index(name = "task_timestamp_ix", columnList = "timestamp_ desc, task_id_ desc"),
+        @Index(name = "task_user_order_ix", columnList = "user_id_, timestamp_ desc, task_id_ desc"),
+        @Index(name = "task_done_ix", columnList = "done_") })
 @NamedQueries({ //
-        @NamedQuery(name = TaskEntity.SELECT_ALL, query = "select t from TaskEntity t order by t.timestamp desc") })
+        @NamedQuery(name = TaskEntity.SELECT_ALL, query = "select t from TaskEntity t where t.userId = :userId " //
+                + "order by t.timestamp desc, t.taskId desc"),
+        @NamedQuery(name = TaskEntity.SELECT_AFTER, query = "select t from TaskEntity t where t.userId = :userId " //
+                + "and t.timestamp <= :timestamp and (t.timestamp < :timestamp or t.taskId < :taskId) " //
+                + "order by t.timestamp desc, t.taskId desc"),
+        @NamedQuery(name = TaskEntity.SELECT_BY_IDS, query = "select t from TaskEntity t where t.userId = :userId " //
+                + "and t.taskId in :taskIds order by t.timestamp desc, t.taskId desc"),
+        @NamedQuery(name = TaskEntity.SELECT_ALL_USERS, query = "select t from TaskEntity t " //
+                + "order by t.timestamp desc, t.taskId desc") })
 public class TaskEntity {
 
     static final String SELECT_ALL = "TaskEntity.Select";
+    static final String SELECT_AFTER = "TaskEntity.SelectAfter";
+    static final String SELECT_BY_IDS = "TaskEntity.SelectByIds";
+    static final String SELECT_ALL_USERS = "TaskEntity.SelectAllUsers";
 
     @Id
     @Column(name = "task_id_")
-    private String taskId;
+    private UUID taskId; // stored as 16 bytes, exposed as 32 hex digits
 
-    @Column(name = "user_id_")
+    @Column(name = "user_id_", length = 64)
     private String userId;
 
     @Column(name = "timestamp_")
     private Instant timestamp;
 
-    @Column(name = "title_")
+    @Column(name = "title_", length = 255)
     private String title;
 
-    @Column(name = "description_")
+    @Column(name = "description_", length = 4000)
     private String description;
 
     @Column(name = "done_")
     private Boolean done;
 
+    @Version
+    @Column(name = "version_")
+    private Long version; // incremented on every update, which fails if the row has been changed concurrently
+
     public String getTaskId() {
-        return taskId;
+        return formatTaskId(taskId);
+    }
+
+    public void setTaskId(String taskId) {
+        this.taskId = parseTaskId(taskId);
     }
 
     public void setNewTaskId() {
-        this.taskId = UUID.randomUUID().toString().replace("-", "");
+        this.taskId = UUID.randomUUID();
+    }
+
+    UUID getTaskUuid() {
+        return taskId;
+    }
+
+    static String formatTaskId(UUID taskId) {
+        return taskId == null ? null : taskId.toString().replace("-", "");
+    }
+
+    static UUID parseTaskId(String text) {
+        try {
+            if(text == null) {
+                return null;
+            } else if(text.length() == 32) {
+                return new UUID(Long.parseUnsignedLong(text, 0, 16, 16), Long.parseUnsignedLong(text, 16, 32, 16));
+            } else if(text.length() == 36) {
+                return UUID.fromString(text);
+            } else {
+                return null;
+            }
+        } catch(IllegalArgumentException e) {
+            return null;
+        }
     }
 
     public String getUserId() {
@@ -84,4 +132,12 @@ public class TaskEntity {
     public void setDone(boolean done) {
         this.done = Boolean.valueOf(done);
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
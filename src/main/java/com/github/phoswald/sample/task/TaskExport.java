@@ -0,0 +1,54 @@
+package com.github.phoswald.sample.task;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class TaskExport implements AutoCloseable {
+
+    private final TaskRepository repository;
+    private final Stream<TaskEntity> stream;
+    private final Iterator<TaskEntity> iterator;
+    private final Runnable onClose;
+    private boolean closed;
+
+    TaskExport(TaskRepository repository, Runnable onClose) {
+        this.repository = repository;
+        this.stream = repository.streamAllTasks();
+        this.iterator = stream.iterator();
+        this.onClose = onClose;
+    }
+
+    public synchronized List<TaskEntity> nextChunk(int size) {
+        if(closed) {
+            return null;
+        }
+        if(!iterator.hasNext()) {
+            close();
+            return null;
+        }
+        List<TaskEntity> chunk = new ArrayList<>(size);
+        while(chunk.size() < size && iterator.hasNext()) {
+            chunk.add(iterator.next());
+        }
+        repository.clear(); // detach the chunk, so that it can be garbage collected once written
+        return chunk;
+    }
+
+    @Override
+    public synchronized void close() {
+        if(!closed) {
+            closed = true;
+            try {
+                stream.close();
+            } finally {
+                try {
+                    repository.close();
+                } finally {
+                    onClose.run(); // the connection has been returned
+                }
+            }
+        }
+    }
+}
@@ -1,12 +1,10 @@
 package com.github.phoswald.sample.task;
 
-import java.util.List;
-
 import com.github.phoswald.sample.utils.AbstractView;
 
-public class TaskListView extends AbstractView<List<TaskViewModel>> {
+public class TaskListView extends AbstractView<TaskListViewModel> {
 
     public TaskListView() {
-        super("task-list", "tasks");
+        super("task-list", "page");
     }
 }
@@ -0,0 +1,16 @@
+package com.github.phoswald.sample.task;
+
+import java.util.List;
+
+public class TaskListViewModel {
+
+    public List<TaskViewModel> tasks;
+    public String next;
+    public String query;
+
+    public TaskListViewModel(List<TaskViewModel> tasks, String next, String query) {
+        this.tasks = tasks;
+        this.next = next;
+        this.query = query;
+    }
+}
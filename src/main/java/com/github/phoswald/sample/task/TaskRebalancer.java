@@ -0,0 +1,125 @@
+package com.github.phoswald.sample.task;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.phoswald.sample.ApplicationModule;
+import com.github.phoswald.sample.utils.HashRing;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+
+/*
+ * Offline tool that moves tasks after app.jdbc.shards has been changed, while the application is stopped.
+ * Usage: TaskRebalancer <previous number of shards>, with the same configuration as the application.
+ * Tasks are copied to their new shard first and deleted from the old one afterwards, so the tool can be run again
+ * if it has been interrupted. Versions are kept, so ETags held by clients remain valid.
+ */
+public class TaskRebalancer {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskRebalancer.class);
+    private static final int CHUNK_SIZE = 500;
+
+    private final ApplicationModule module;
+    private final HashRing previousRing;
+    private final HashRing ring;
+    private final Map<Integer, EntityManagerFactory> emfs = new HashMap<>();
+    private final TaskRepositoryFactory repositoryFactory; // without cache and change events, the application is stopped
+
+    public TaskRebalancer(ApplicationModule module, int previousShards) {
+        this.module = module;
+        this.previousRing = new HashRing(previousShards);
+        this.ring = module.getHashRing();
+        this.repositoryFactory = new TaskRepositoryFactory(this::getEntityManagerFactory, ring, null, null);
+    }
+
+    public static void main(String[] args) {
+        if(args.length != 1) {
+            System.err.println("Usage: TaskRebalancer <previous number of shards>");
+            System.exit(1);
+        }
+        try(var module = new ApplicationModule()) {
+            new TaskRebalancer(module, Integer.parseInt(args[0])).run();
+        }
+    }
+
+    public void run() {
+        logger.info("Rebalancing tasks from " + previousRing.getShards() + " to " + ring.getShards() + " shards");
+        try {
+            long moved = 0;
+            for(int shard = 0; shard < previousRing.getShards(); shard++) {
+                moved += rebalanceShard(shard);
+            }
+            logger.info("Rebalancing done, " + moved + " tasks moved");
+        } finally {
+            emfs.values().forEach(EntityManagerFactory::close);
+        }
+    }
+
+    private long rebalanceShard(int shard) {
+        List<UUID> movedIds = new ArrayList<>();
+        Map<Integer, List<TaskEntity>> chunks = new HashMap<>();
+        // a shard can hold tasks that do not belong to it (e.g. after an earlier interrupted run), all are checked
+        try(TaskRepository repository = repositoryFactory.openShardReadOnly(shard)) {
+            Iterator<TaskEntity> iterator = repository.streamAllTasks().iterator();
+            while(iterator.hasNext()) {
+                TaskEntity entity = iterator.next();
+                int target = ring.getShard(entity.getUserId());
+                if(target != shard) {
+                    List<TaskEntity> chunk = chunks.computeIfAbsent(target, key -> new ArrayList<>());
+                    chunk.add(entity);
+                    movedIds.add(entity.getTaskUuid());
+                    if(chunk.size() == CHUNK_SIZE) {
+                        copy(target, chunk);
+                        repository.clear();
+                    }
+                }
+            }
+            chunks.forEach(this::copy);
+        }
+        // only after all copies have been committed
+        for(int i = 0; i < movedIds.size(); i += CHUNK_SIZE) {
+            delete(shard, movedIds.subList(i, Math.min(i + CHUNK_SIZE, movedIds.size())));
+        }
+        logger.info("Shard " + shard + ": " + movedIds.size() + " tasks moved");
+        return movedIds.size();
+    }
+
+    private void copy(int shard, List<TaskEntity> chunk) {
+        try(StatelessSession session = getEntityManagerFactory(shard).unwrap(SessionFactory.class).openStatelessSession()) {
+            session.beginTransaction();
+            for(TaskEntity entity : chunk) {
+                if(session.get(TaskEntity.class, entity.getTaskUuid()) == null) {
+                    session.insert(entity); // unlike persist(), keeps the version
+                }
+            }
+            session.getTransaction().commit();
+        }
+        chunk.clear();
+    }
+
+    private void delete(int shard, List<UUID> taskIds) {
+        EntityManager em = getEntityManagerFactory(shard).createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.createQuery("delete from TaskEntity t where t.taskId in :taskIds").setParameter("taskIds", taskIds).executeUpdate();
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+    }
+
+    private EntityManagerFactory getEntityManagerFactory(int shard) {
+        // also shards that are no longer used, if the number has been reduced
+        return emfs.computeIfAbsent(shard, module::createEntityManagerFactory);
+    }
+}
@@ -1,6 +1,18 @@
 package com.github.phoswald.sample.task;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+
+import com.github.phoswald.sample.utils.Metrics;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
@@ -8,24 +20,89 @@ import jakarta.persistence.TypedQuery;
 
 public class TaskRepository implements AutoCloseable {
 
+    public static final String DEFAULT_USER = "guest";
+
+    private static final Metrics.Timer selectTimer = createTimer("select");
+    private static final Metrics.Timer findTimer = createTimer("find");
+    private static final Metrics.Timer persistTimer = createTimer("persist");
+    private static final Metrics.Timer removeTimer = createTimer("remove");
+    private static final Metrics.Timer flushTimer = createTimer("flush");
+    private static final Metrics.Timer commitTimer = createTimer("commit");
+
     private final EntityManager em;
+    private final boolean readOnly;
+    private final TaskCache cache;
+    private final TaskChangePublisher publisher;
+    private final String userId; // null: all users of this shard, for maintenance only
+    private final Set<UUID> dirtyIds = new HashSet<>();
+    private final Map<UUID, Change> changes = new LinkedHashMap<>(); // the latest change per task, without the entity
+    private final List<TaskEntity> unflushed = new ArrayList<>(); // changed entities, until their versions are final
+    private boolean dirtyList;
     private boolean rollback;
 
-    public TaskRepository(EntityManagerFactory emf) {
+    // opened by TaskRepositoryFactory only
+    TaskRepository(EntityManagerFactory emf, boolean readOnly, TaskCache cache, TaskChangePublisher publisher, String userId) {
+        this.readOnly = readOnly;
+        this.cache = cache;
+        this.publisher = publisher;
+        this.userId = userId;
         em = emf.createEntityManager();
+        if(readOnly) {
+            // loaded entities are not snapshotted for dirty checking and never flushed
+            Session session = em.unwrap(Session.class);
+            session.setDefaultReadOnly(true);
+            session.setHibernateFlushMode(FlushMode.MANUAL);
+            session.doWork(connection -> connection.setReadOnly(true));
+        }
         em.getTransaction().begin();
     }
 
+    private static Metrics.Timer createTimer(String operation) {
+        return Metrics.timer("task_repository_seconds", "Task repository operations, excluding cache hits", "operation", operation);
+    }
+
     @Override
     public void close() {
+        long start = System.nanoTime();
+        boolean committed = false;
         try {
-            if(rollback) {
+            if(rollback || readOnly) {
                 em.getTransaction().rollback();
             } else {
                 em.getTransaction().commit();
+                committed = true;
+                recordVersions();
             }
         } finally {
+            commitTimer.recordSince(start);
             em.close();
+            invalidateCache();
+        }
+        if(committed) {
+            publishChanges();
+        }
+    }
+
+    private void publishChanges() {
+        // after commit, with the final versions, so that subscribers never see changes that are rolled back
+        if(publisher != null && !changes.isEmpty()) {
+            List<TaskChangeEvent> events = new ArrayList<>(changes.size());
+            for(Map.Entry<UUID, Change> change : changes.entrySet()) {
+                events.add(publisher.createEvent(change.getValue().type(), change.getValue().userId(), TaskEntity.formatTaskId(change.getKey()), change.getValue().version()));
+            }
+            publisher.publish(events);
+        }
+    }
+
+    private void invalidateCache() {
+        // only after commit, so that concurrent readers cannot cache the old state again
+        if(cache != null) {
+            for(UUID id : dirtyIds) {
+                cache.getEntities().invalidate(id);
+            }
+            if(dirtyList) {
+                cache.invalidateList();
+            }
         }
     }
 
@@ -34,24 +111,153 @@ public class TaskRepository implements AutoCloseable {
     }
 
     public List<TaskEntity> selectAllTasks() {
-        TypedQuery<TaskEntity> query = em.createNamedQuery(TaskEntity.SELECT_ALL, TaskEntity.class);
-        query.setMaxResults(100);
-        return query.getResultList();
+        return selectTasks(null, 100);
+    }
+
+    public List<TaskEntity> selectTasks(TaskCursor after, int limit) {
+        if(after == null && readOnly && cache != null) {
+            return cache.getFirstPages().get(userId + "/" + limit, () -> List.copyOf(queryTasks(null, limit)));
+        }
+        return queryTasks(after, limit);
+    }
+
+    private List<TaskEntity> queryTasks(TaskCursor after, int limit) {
+        long start = System.nanoTime();
+        TypedQuery<TaskEntity> query;
+        if(after == null) {
+            query = em.createNamedQuery(TaskEntity.SELECT_ALL, TaskEntity.class);
+        } else {
+            // keyset pagination: seek into the index instead of skipping rows with an offset
+            query = em.createNamedQuery(TaskEntity.SELECT_AFTER, TaskEntity.class);
+            query.setParameter("timestamp", after.getTimestamp());
+            query.setParameter("taskId", after.getTaskId());
+        }
+        query.setParameter("userId", userId);
+        query.setMaxResults(limit);
+        List<TaskEntity> result = query.getResultList();
+        selectTimer.recordSince(start);
+        return result;
+    }
+
+    public List<TaskEntity> selectTasksByIds(List<UUID> taskIds) {
+        if(taskIds.isEmpty()) {
+            return List.of();
+        }
+        long start = System.nanoTime();
+        TypedQuery<TaskEntity> query = em.createNamedQuery(TaskEntity.SELECT_BY_IDS, TaskEntity.class);
+        query.setParameter("userId", userId);
+        query.setParameter("taskIds", taskIds);
+        List<TaskEntity> result = query.getResultList();
+        selectTimer.recordSince(start);
+        return result;
+    }
+
+    public Stream<TaskEntity> streamAllTasks() {
+        TypedQuery<TaskEntity> query;
+        if(userId == null) {
+            query = em.createNamedQuery(TaskEntity.SELECT_ALL_USERS, TaskEntity.class);
+        } else {
+            query = em.createNamedQuery(TaskEntity.SELECT_ALL, TaskEntity.class);
+            query.setParameter("userId", userId);
+        }
+        query.setHint("org.hibernate.fetchSize", 500);
+        return query.getResultStream(); // backed by a scrollable JDBC cursor
     }
 
     public TaskEntity selectTaskById(String taskId) {
-        return em.find(TaskEntity.class, taskId);
+        UUID id = TaskEntity.parseTaskId(taskId);
+        if(id == null) {
+            return null;
+        } else if(readOnly && cache != null) {
+            return ownTask(cache.getEntities().get(id, () -> findTask(id)));
+        } else if(!readOnly) {
+            // the caller may modify the managed entity, which is flushed on commit
+            dirtyIds.add(id);
+            dirtyList = true;
+        }
+        return ownTask(findTask(id));
+    }
+
+    private TaskEntity ownTask(TaskEntity entity) {
+        // tasks of other users do not exist for this user
+        return entity == null || userId == null || userId.equals(entity.getUserId()) ? entity : null;
+    }
+
+    private TaskEntity findTask(UUID id) {
+        long start = System.nanoTime();
+        TaskEntity entity = em.find(TaskEntity.class, id);
+        findTimer.recordSince(start);
+        return entity;
     }
 
     public void createTask(TaskEntity entity) {
+        if(userId != null) {
+            entity.setUserId(userId);
+        }
+        long start = System.nanoTime();
         em.persist(entity);
+        persistTimer.recordSince(start);
+        dirtyList = true;
+        addChange(TaskChangeEvent.Type.CREATED, entity);
+    }
+
+    public void updateTask(TaskEntity entity) {
+        // the managed entity is flushed anyway, this announces the change to subscribers
+        addChange(TaskChangeEvent.Type.UPDATED, entity);
     }
 
     public void deleteTask(TaskEntity entity) {
+        long start = System.nanoTime();
         em.remove(entity);
+        removeTimer.recordSince(start);
+        dirtyIds.add(entity.getTaskUuid());
+        dirtyList = true;
+        addChange(TaskChangeEvent.Type.DELETED, entity);
+    }
+
+    private void addChange(TaskChangeEvent.Type type, TaskEntity entity) {
+        if(publisher == null) {
+            return;
+        }
+        // one change per task, so that a large transaction does not keep a list of all its operations
+        Change previous = changes.remove(entity.getTaskUuid());
+        if(previous != null && previous.type() == TaskChangeEvent.Type.CREATED) {
+            if(type == TaskChangeEvent.Type.DELETED) {
+                return; // nobody has seen this task
+            }
+            type = TaskChangeEvent.Type.CREATED;
+        }
+        changes.put(entity.getTaskUuid(), new Change(type, entity.getUserId(), entity.getVersion()));
+        unflushed.add(entity);
+    }
+
+    private void recordVersions() {
+        // the flush increments the versions, after it the entities are no longer needed
+        for(TaskEntity entity : unflushed) {
+            changes.computeIfPresent(entity.getTaskUuid(), (id, change) -> new Change(change.type(), change.userId(), entity.getVersion()));
+        }
+        unflushed.clear();
     }
 
     public void updateChanges() {
+        flush();
+    }
+
+    public void flushAndClear() {
+        flush();
+        em.clear();
+    }
+
+    private void flush() {
+        long start = System.nanoTime();
         em.flush();
+        flushTimer.recordSince(start);
+        recordVersions();
     }
+
+    public void clear() {
+        em.clear();
+    }
+
+    private record Change(TaskChangeEvent.Type type, String userId, Long version) { }
 }
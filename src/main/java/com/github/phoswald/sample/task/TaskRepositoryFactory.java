@@ -0,0 +1,55 @@
+package com.github.phoswald.sample.task;
+
+import java.util.function.IntFunction;
+
+import com.github.phoswald.sample.utils.HashRing;
+
+import jakarta.persistence.EntityManagerFactory;
+
+public class TaskRepositoryFactory {
+
+    private final IntFunction<EntityManagerFactory> emf; // by shard
+    private final HashRing ring;
+    private final TaskCache cache;
+    private final TaskChangePublisher publisher;
+
+    public TaskRepositoryFactory(IntFunction<EntityManagerFactory> emf, HashRing ring, TaskCache cache, TaskChangePublisher publisher) {
+        this.emf = emf;
+        this.ring = ring;
+        this.cache = cache;
+        this.publisher = publisher;
+    }
+
+    public TaskRepository openReadWrite(String userId) {
+        return new TaskRepository(emf.apply(getShard(userId)), false, cache, publisher, userId);
+    }
+
+    public TaskRepository openReadOnly(String userId) {
+        return new TaskRepository(emf.apply(getShard(userId)), true, cache, publisher, userId);
+    }
+
+    TaskRepository openShardReadWrite(int shard) {
+        // all users of the shard, the caller sets the user of new tasks
+        return new TaskRepository(emf.apply(shard), false, cache, publisher, null);
+    }
+
+    TaskRepository openShardReadOnly(int shard) {
+        return new TaskRepository(emf.apply(shard), true, cache, publisher, null);
+    }
+
+    public int getShard(String userId) {
+        return ring.getShard(userId);
+    }
+
+    public int getShards() {
+        return ring.getShards();
+    }
+
+    public TaskCache getCache() {
+        return cache;
+    }
+
+    public TaskChangePublisher getPublisher() {
+        return publisher;
+    }
+}
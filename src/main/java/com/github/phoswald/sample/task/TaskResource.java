@@ -1,61 +1,178 @@
 package com.github.phoswald.sample.task;
 
 import java.time.Instant;
+import java.util.Iterator;
 import java.util.List;
-import java.util.function.Supplier;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+
+import org.reactivestreams.Publisher;
+
+import com.github.phoswald.sample.utils.CacheStatistics;
+import com.github.phoswald.sample.utils.Page;
+import com.github.phoswald.sample.utils.Validator;
+
+import jakarta.persistence.OptimisticLockException;
 
 public class TaskResource {
 
-    private final Supplier<TaskRepository> repositoryFactory;
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 1000;
+    static final int BATCH_FLUSH_SIZE = 50; // matches hibernate.jdbc.batch_size
 
-    public TaskResource(Supplier<TaskRepository> repositoryFactory) {
+    private final TaskRepositoryFactory repositoryFactory;
+    private final TaskWriter writer;
+    private final TaskSearchIndex searchIndex;
+
+    public TaskResource(TaskRepositoryFactory repositoryFactory, TaskWriter writer, TaskSearchIndex searchIndex) {
         this.repositoryFactory = repositoryFactory;
+        this.writer = writer;
+        this.searchIndex = searchIndex;
     }
 
-    public List<TaskEntity> getTasks() {
-        try(TaskRepository repository = repositoryFactory.get()) {
-            List<TaskEntity> entities = repository.selectAllTasks();
-            return entities;
+    public Page<TaskEntity> getTasks(String userId, String after, String limit) {
+        int limitValue = parseLimit(limit);
+        try(TaskRepository repository = repositoryFactory.openReadOnly(userId)) {
+            List<TaskEntity> entities = repository.selectTasks(after == null ? null : TaskCursor.decode(after), limitValue);
+            return new Page<>(entities, limitValue, nextCursor(entities, limitValue));
         }
     }
 
-    public TaskEntity postTasks(TaskEntity request) {
-        try(TaskRepository repository = repositoryFactory.get()) {
-            TaskEntity entity = new TaskEntity();
-            entity.setNewTaskId();
-            entity.setUserId("guest");
-            entity.setTimestamp(Instant.now());
-            entity.setTitle(request.getTitle());
-            entity.setDescription(request.getDescription());
-            entity.setDone(request.isDone());
-            repository.createTask(entity);
-            return entity;
+    public Page<TaskEntity> searchTasks(String userId, String query, String limit) {
+        int limitValue = parseLimit(limit);
+        if(query == null) {
+            throw new IllegalArgumentException("Missing query");
+        }
+        try(TaskRepository repository = repositoryFactory.openReadOnly(userId)) {
+            // the index finds the ids, the database the current state (a task deleted in the meantime is skipped)
+            return new Page<>(repository.selectTasksByIds(searchIndex.search(userId, query, limitValue)), limitValue, null);
+        }
+    }
+
+    public Validator getListValidator(String userId) {
+        return repositoryFactory.getCache().getListValidator(userId);
+    }
+
+    public static Validator getValidator(TaskEntity entity) {
+        // weak, because ResponseCompression may send the same version gzipped or not, which are different bytes
+        return Validator.weak(entity.getTaskId() + "-" + entity.getVersion(), entity.getTimestamp());
+    }
+
+    static void checkVersion(TaskEntity entity, String ifMatch, Long version) {
+        // the check at commit (@Version) only covers changes since the entity was loaded, not since the client read it;
+        // If-Match is compared with the version alone (weak comparison), whatever encoding the client received
+        if((ifMatch != null && !getValidator(entity).matches(ifMatch, false))
+                || (version != null && !version.equals(entity.getVersion()))) {
+            throw new OptimisticLockException("Task " + entity.getTaskId() + " has been changed, current version is " + entity.getVersion());
+        }
+    }
+
+    static int parseLimit(String limit) {
+        int limitValue = limit == null ? DEFAULT_LIMIT : Integer.parseInt(limit);
+        if(limitValue < 1 || limitValue > MAX_LIMIT) {
+            throw new IllegalArgumentException("Invalid limit: " + limit);
+        }
+        return limitValue;
+    }
+
+    static String nextCursor(List<TaskEntity> entities, int limit) {
+        return entities.size() < limit ? null : TaskCursor.of(entities.get(entities.size() - 1)).encode();
+    }
+
+    public CompletionStage<TaskEntity> postTasks(String userId, TaskEntity request) {
+        TaskEntity entity = new TaskEntity();
+        entity.setNewTaskId();
+        entity.setUserId(userId);
+        entity.setTimestamp(Instant.now());
+        entity.setTitle(request.getTitle());
+        entity.setDescription(request.getDescription());
+        entity.setDone(request.isDone());
+        return writer.create(entity); // completes after commit, possibly together with other creates
+    }
+
+    public TaskBatch postTasksBatch(String userId, Iterator<TaskBatchOperation> operations, Runnable onClose) {
+        // the caller takes the results chunk by chunk and must close the batch if it stops early
+        return new TaskBatch(repositoryFactory.openReadWrite(userId), operations, onClose);
+    }
+
+    public TaskExport exportTasks(String userId, Runnable onClose) {
+        TaskRepository repository = repositoryFactory.openReadOnly(userId);
+        try {
+            return new TaskExport(repository, onClose);
+        } catch(RuntimeException e) {
+            repository.close();
+            throw e;
         }
     }
 
-    public TaskEntity getTask(String id) {
-        try(TaskRepository repository = repositoryFactory.get()) {
+    public TaskEntity getTask(String userId, String id) {
+        try(TaskRepository repository = repositoryFactory.openReadOnly(userId)) {
             TaskEntity entity = repository.selectTaskById(id);
             return entity;
         }
     }
 
-    public TaskEntity putTask(String id, TaskEntity request) {
-        try(TaskRepository repository = repositoryFactory.get()) {
+    public TaskEntity putTask(String userId, String id, String ifMatch, TaskEntity request) {
+        try(TaskRepository repository = repositoryFactory.openReadWrite(userId)) {
             TaskEntity entity = repository.selectTaskById(id);
+            if(entity == null) {
+                return null;
+            }
+            checkVersion(entity, ifMatch, request.getVersion());
             entity.setTimestamp(Instant.now());
             entity.setTitle(request.getTitle());
             entity.setDescription(request.getDescription());
             entity.setDone(request.isDone());
+            repository.updateTask(entity);
             return entity;
         }
     }
 
-    public String deleteTask(String id) {
-        try(TaskRepository repository = repositoryFactory.get()) {
+    public String deleteTask(String userId, String id, String ifMatch) {
+        try(TaskRepository repository = repositoryFactory.openReadWrite(userId)) {
             TaskEntity entity = repository.selectTaskById(id);
+            if(entity == null) {
+                return null;
+            }
+            checkVersion(entity, ifMatch, null);
             repository.deleteTask(entity);
             return "";
         }
     }
+
+    public void warmUpDatabase(int shard) {
+        // creates the EntityManagerFactory and the connection pool of the shard and compiles a query, finds nothing
+        try(TaskRepository repository = repositoryFactory.openShardReadOnly(shard)) {
+            repository.selectTasksByIds(List.of(new UUID(0, 0)));
+        }
+    }
+
+    public int getShards() {
+        return repositoryFactory.getShards();
+    }
+
+    public void rebuildSearchIndex() {
+        searchIndex.rebuild(); // in the background
+    }
+
+    public Publisher<TaskChangeEvent> getChanges(String userId) {
+        return repositoryFactory.getPublisher().subscribe(userId);
+    }
+
+    public int getChangeSubscriberCount() {
+        return repositoryFactory.getPublisher().getSubscriberCount();
+    }
+
+    public int getSearchDocumentCount() {
+        return searchIndex.getDocumentCount();
+    }
+
+    public int getWriterQueueSize() {
+        return writer.getQueueSize();
+    }
+
+    public Map<String, CacheStatistics> getCacheStatistics() {
+        return repositoryFactory.getCache().getStatistics();
+    }
 }
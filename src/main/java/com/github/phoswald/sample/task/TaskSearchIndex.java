@@ -0,0 +1,390 @@
+package com.github.phoswald.sample.task;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * In-process inverted index over the title and description of all tasks. It is kept up to date by the committed
+ * changes of TaskChangePublisher and rebuilt in the background after the warm-up at startup, so a query never scans the table.
+ * All terms of a query must match, a term ending with * matches as a prefix. Results are ordered like the task list.
+ * Until the first rebuild is done, a search is rejected (503) rather than answered with incomplete results.
+ * The changes are indexed by a thread of its own, coalesced per task: the changed tasks are loaded again, in chunks
+ * per user, so a commit does not wait for the index and a search may briefly miss the latest changes.
+ * Every user has postings of their own and never sees other users' tasks. The documents refer to the terms that are
+ * the keys of the postings, so a term is stored once per user, not once per task.
+ */
+public class TaskSearchIndex implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskSearchIndex.class);
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Comparator<Document> ORDER = Comparator.comparing((Document document) -> document.timestamp)
+            .thenComparing(document -> document.taskId).reversed();
+
+    private static final int LOAD_CHUNK = 500;
+
+    private final TaskRepositoryFactory repositoryFactory;
+    private static final ConcurrentSkipListMap<String, Set<Document>> NO_POSTINGS = new ConcurrentSkipListMap<>(); // never modified
+
+    private final Map<String, ConcurrentSkipListMap<String, Set<Document>>> postings = new ConcurrentHashMap<>(); // by user, then by term, sorted for prefixes
+    private final Map<UUID, Document> documents = new ConcurrentHashMap<>();
+    private final Set<UUID> deletedWhileRebuilding = new HashSet<>();
+    private final ExecutorService indexer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "task-search-indexer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<UUID, TaskChangeEvent> pendingChanges = new LinkedHashMap<>(); // the latest change per task
+    private boolean indexing; // guarded by pendingChanges, like the map
+    private volatile boolean ready;
+    private volatile boolean closed;
+    private Thread rebuildThread;
+
+    public TaskSearchIndex(TaskRepositoryFactory repositoryFactory) {
+        this.repositoryFactory = repositoryFactory;
+        repositoryFactory.getPublisher().addListener(this::onChanges);
+    }
+
+    public synchronized void rebuild() {
+        if(rebuildThread != null || closed) {
+            return; // at most once
+        }
+        rebuildThread = new Thread(() -> {
+            long start = System.nanoTime();
+            int count = 0;
+            try {
+                for(int shard = 0; shard < repositoryFactory.getShards(); shard++) {
+                    try(TaskRepository repository = repositoryFactory.openShardReadOnly(shard)) {
+                        Iterator<TaskEntity> iterator = repository.streamAllTasks().iterator();
+                        while(iterator.hasNext() && !closed) {
+                            add(iterator.next(), true);
+                            if(++count % 1000 == 0) {
+                                repository.clear(); // the entities are not needed after indexing
+                            }
+                        }
+                    }
+                }
+                if(closed) {
+                    return;
+                }
+                synchronized(this) {
+                    deletedWhileRebuilding.clear();
+                    ready = true;
+                }
+                logger.info("Task search index rebuilt: " + count + " tasks, " + postings.values().stream().mapToInt(Map::size).sum() + " terms in " + (System.nanoTime() - start) / 1000000 + " ms");
+            } catch(RuntimeException e) {
+                logger.error("Failed to rebuild task search index", e);
+            }
+        }, "task-search-rebuild");
+        rebuildThread.setDaemon(true);
+        rebuildThread.start();
+    }
+
+    @Override
+    public void close() {
+        // a running rebuild stops after the current task, it is not interrupted while it uses the database,
+        // and neither is the indexer, which drops the changes it has not started yet
+        synchronized(pendingChanges) {
+            closed = true;
+        }
+        indexer.shutdown();
+        Thread thread;
+        synchronized(this) {
+            thread = rebuildThread;
+        }
+        try {
+            if(thread != null) {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            }
+            indexer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int getDocumentCount() {
+        return documents.size();
+    }
+
+    public boolean hasPendingChanges() {
+        synchronized(pendingChanges) {
+            return indexing;
+        }
+    }
+
+    public List<UUID> search(String userId, String query, int limit) {
+        if(!ready) {
+            // until the rebuild is done, results would silently miss tasks;
+            // without the warm-up at startup (app.startup.warmup=false), the first search starts the rebuild
+            rebuild();
+            throw new RejectedExecutionException("Task search index is being rebuilt");
+        }
+        NavigableMap<String, Set<Document>> userPostings = postings.getOrDefault(userId, NO_POSTINGS);
+        List<Match> matches = new ArrayList<>();
+        for(String part : query.trim().split("\\s+")) {
+            boolean prefix = part.endsWith("*");
+            List<String> terms = tokenize(prefix ? part.substring(0, part.length() - 1) : part);
+            for(int i = 0; i < terms.size(); i++) {
+                String term = terms.get(i);
+                matches.add(prefix && i == terms.size() - 1 ? new PrefixMatch(userPostings, term) : new TermMatch(userPostings.getOrDefault(term, Set.of())));
+            }
+        }
+        if(matches.isEmpty()) {
+            throw new IllegalArgumentException("Invalid query: " + query);
+        }
+        // iterate the rarest term, the others are only probed, and keep the best results only
+        matches.sort(Comparator.comparingLong(Match::size));
+        PriorityQueue<Document> best = new PriorityQueue<>(limit + 1, ORDER.reversed());
+        for(Document document : matches.get(0).documents()) {
+            if(containsAll(matches, document)) {
+                best.add(document);
+                if(best.size() > limit) {
+                    best.poll();
+                }
+            }
+        }
+        List<Document> result = new ArrayList<>(best);
+        result.sort(ORDER);
+        return result.stream().map(document -> document.taskId).toList();
+    }
+
+    private static boolean containsAll(List<Match> matches, Document document) {
+        for(int i = 1; i < matches.size(); i++) {
+            if(!matches.get(i).contains(document)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void onChanges(List<TaskChangeEvent> events) {
+        // called by the committing thread, e.g. a request or the group-commit writer: only queue the changes
+        synchronized(pendingChanges) {
+            if(closed) {
+                return; // the databases may already be closed
+            }
+            for(TaskChangeEvent event : events) {
+                pendingChanges.put(TaskEntity.parseTaskId(event.getTaskId()), event);
+            }
+            if(!indexing) {
+                indexing = true;
+                indexer.execute(this::indexChanges);
+            }
+        }
+    }
+
+    private void indexChanges() {
+        while(true) {
+            List<TaskChangeEvent> events;
+            synchronized(pendingChanges) {
+                if(pendingChanges.isEmpty() || closed) {
+                    indexing = false;
+                    return;
+                }
+                events = new ArrayList<>(pendingChanges.values());
+                pendingChanges.clear();
+            }
+            try {
+                applyChanges(events);
+            } catch(RuntimeException e) {
+                logger.warn("Failed to index task changes", e);
+            }
+        }
+    }
+
+    private void applyChanges(List<TaskChangeEvent> events) {
+        Map<String, List<UUID>> changed = new HashMap<>(); // by user
+        for(TaskChangeEvent event : events) {
+            UUID taskId = TaskEntity.parseTaskId(event.getTaskId());
+            switch(event.getType()) {
+                case CREATED, UPDATED -> changed.computeIfAbsent(event.getUserId(), key -> new ArrayList<>()).add(taskId);
+                case DELETED -> remove(taskId);
+                default -> { }
+            }
+        }
+        for(Map.Entry<String, List<UUID>> entry : changed.entrySet()) {
+            try(TaskRepository repository = repositoryFactory.openReadOnly(entry.getKey())) {
+                List<UUID> taskIds = entry.getValue();
+                for(int i = 0; i < taskIds.size(); i += LOAD_CHUNK) {
+                    for(TaskEntity entity : repository.selectTasksByIds(taskIds.subList(i, Math.min(taskIds.size(), i + LOAD_CHUNK)))) {
+                        add(entity, false); // not found: deleted by a later commit
+                    }
+                    repository.clear();
+                }
+            }
+        }
+    }
+
+    private synchronized void add(TaskEntity entity, boolean fromRebuild) {
+        UUID taskId = entity.getTaskUuid();
+        Document previous = documents.get(taskId);
+        // changes of concurrent commits may overtake each other or the rebuild
+        if((previous != null && version(previous.version) >= version(entity.getVersion()))
+                || (fromRebuild && deletedWhileRebuilding.contains(taskId))) {
+            return;
+        }
+        if(previous != null) {
+            removeTerms(previous);
+        }
+        Set<String> tokens = new HashSet<>(tokenize(entity.getTitle()));
+        tokens.addAll(tokenize(entity.getDescription()));
+        ConcurrentSkipListMap<String, Set<Document>> userPostings = postings.computeIfAbsent(entity.getUserId(), key -> new ConcurrentSkipListMap<>());
+        String[] terms = new String[tokens.size()];
+        int i = 0;
+        for(String token : tokens) {
+            userPostings.computeIfAbsent(token, key -> ConcurrentHashMap.newKeySet());
+            terms[i++] = userPostings.ceilingKey(token); // the key in the map, the token is garbage
+        }
+        Document document = new Document(taskId, entity.getTimestamp(), entity.getVersion(), userPostings, terms);
+        documents.put(taskId, document);
+        for(String term : terms) {
+            userPostings.get(term).add(document);
+        }
+    }
+
+    private synchronized void remove(UUID taskId) {
+        if(!ready) {
+            deletedWhileRebuilding.add(taskId);
+        }
+        Document previous = documents.remove(taskId);
+        if(previous != null) {
+            removeTerms(previous);
+        }
+    }
+
+    private void removeTerms(Document document) {
+        for(String term : document.terms) {
+            Set<Document> documents = document.postings.get(term);
+            documents.remove(document);
+            if(documents.isEmpty()) {
+                document.postings.remove(term);
+            }
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        if(text == null) {
+            return List.of();
+        }
+        return SEPARATORS.splitAsStream(text.toLowerCase(Locale.ROOT)).filter(term -> !term.isEmpty()).toList();
+    }
+
+    private static long version(Long version) {
+        return version == null ? -1 : version;
+    }
+
+    private interface Match {
+
+        long size();
+
+        Iterable<Document> documents();
+
+        boolean contains(Document document);
+    }
+
+    private record TermMatch(Set<Document> documents) implements Match {
+
+        @Override
+        public long size() {
+            return documents.size();
+        }
+
+        @Override
+        public boolean contains(Document document) {
+            return documents.contains(document);
+        }
+    }
+
+    // lazy, a short prefix may match the terms of most tasks: nothing is collected, a probe tests the terms of the document
+    private static class PrefixMatch implements Match {
+
+        private final NavigableMap<String, Set<Document>> postings;
+        private final String prefix;
+        private final long size; // at most, a document with several matching terms is counted for each
+
+        private PrefixMatch(NavigableMap<String, Set<Document>> postings, String prefix) {
+            this.postings = postings;
+            this.prefix = prefix;
+            long sum = 0;
+            for(Set<Document> documents : terms().values()) {
+                sum += documents.size();
+            }
+            this.size = sum;
+        }
+
+        private NavigableMap<String, Set<Document>> terms() {
+            return postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public Iterable<Document> documents() {
+            // every document only once, under the first of its matching terms
+            return () -> terms().entrySet().stream()
+                    .flatMap(entry -> entry.getValue().stream().filter(document -> entry.getKey().equals(firstMatchingTerm(document))))
+                    .iterator();
+        }
+
+        @Override
+        public boolean contains(Document document) {
+            return firstMatchingTerm(document) != null;
+        }
+
+        private String firstMatchingTerm(Document document) {
+            String first = null;
+            for(String term : document.terms) {
+                if(term.startsWith(prefix) && (first == null || term.compareTo(first) < 0)) {
+                    first = term;
+                }
+            }
+            return first;
+        }
+    }
+
+    // identity semantics: a task is re-indexed as a new document, the old one is removed from all its terms
+    private static class Document {
+
+        private final UUID taskId;
+        private final Instant timestamp;
+        private final Long version;
+        private final Map<String, Set<Document>> postings; // of the user
+        private final String[] terms;
+
+        private Document(UUID taskId, Instant timestamp, Long version, Map<String, Set<Document>> postings, String[] terms) {
+            this.taskId = taskId;
+            this.timestamp = timestamp;
+            this.version = version;
+            this.postings = postings;
+            this.terms = terms;
+        }
+    }
+}
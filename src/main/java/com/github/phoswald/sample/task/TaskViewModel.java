@@ -14,6 +14,8 @@ public class TaskViewModel {
     public String title;
     public String description;
     public boolean done;
+    public Long version;
+    public String message;
 
     public TaskViewModel(TaskEntity entity) {
         this.taskId = entity.getTaskId();
@@ -21,14 +23,14 @@ public class TaskViewModel {
         this.title = entity.getTitle();
         this.description = entity.getDescription();
         this.done = entity.isDone();
+        this.version = entity.getVersion();
     }
 
     public static List<TaskViewModel> newList(List<TaskEntity> entities) {
         return entities.stream().map(TaskViewModel::new).collect(Collectors.toList());
     }
 
-    private String format(Instant instant) {
-
+    static String format(Instant instant) {
         LocalDateTime dateTime = LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
         return dateTime.format(DateTimeFormatter.ISO_DATE) + " " + dateTime.format(DateTimeFormatter.ISO_TIME);
     }
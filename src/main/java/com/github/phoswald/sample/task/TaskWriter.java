@@ -0,0 +1,170 @@
+package com.github.phoswald.sample.task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.phoswald.sample.utils.ConfigProvider;
+import com.github.phoswald.sample.utils.Metrics;
+
+/*
+ * Group commit for single-task creates: a writer thread per shard drains a bounded queue and stores the tasks
+ * in micro-batches, one transaction (and one log write) per batch. Each caller's future completes only
+ * after the commit of its batch, so the durability is the same as with one transaction per create.
+ */
+public class TaskWriter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskWriter.class);
+    private static final Metrics.Timer batchTimer = Metrics.timer("task_writer_seconds", "Task writer batches, from the first queued create to the commit", "operation", "batch");
+    private static final Pending STOP = new Pending(null, null); // queued by close(), after the last create
+
+    private final TaskRepositoryFactory repositoryFactory;
+    private final boolean enabled;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final List<BlockingQueue<Pending>> queues = new ArrayList<>(); // by shard
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean closed;
+
+    public TaskWriter(ConfigProvider config, TaskRepositoryFactory repositoryFactory) {
+        this.repositoryFactory = repositoryFactory;
+        enabled = Boolean.parseBoolean(config.getConfigProperty("app.tasks.groupcommit").orElse("false"));
+        maxBatch = Integer.parseInt(config.getConfigProperty("app.tasks.groupcommit.batch").orElse("100"));
+        long maxDelay = Long.parseLong(config.getConfigProperty("app.tasks.groupcommit.delay").orElse("0"));
+        int queueLimit = Integer.parseInt(config.getConfigProperty("app.tasks.groupcommit.queue").orElse("1000"));
+        maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelay);
+        logger.info("Task writer: enabled=" + enabled + ", maxBatch=" + maxBatch + ", maxDelay=" + maxDelay + ", queueLimit=" + queueLimit);
+        if(enabled) {
+            for(int shard = 0; shard < repositoryFactory.getShards(); shard++) {
+                BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(queueLimit);
+                int writerShard = shard;
+                Thread thread = new Thread(() -> run(writerShard, queue), "task-writer-" + shard);
+                thread.setDaemon(true);
+                thread.start();
+                queues.add(queue);
+                threads.add(thread);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getQueueSize() {
+        return queues.stream().mapToInt(BlockingQueue::size).sum();
+    }
+
+    public CompletionStage<TaskEntity> create(TaskEntity entity) {
+        if(!enabled) {
+            try(TaskRepository repository = repositoryFactory.openReadWrite(entity.getUserId())) {
+                repository.createTask(entity);
+            }
+            return CompletableFuture.completedFuture(entity);
+        }
+        var pending = new Pending(entity, new CompletableFuture<>());
+        if(closed) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Task writer is closed"));
+        }
+        if(!queues.get(repositoryFactory.getShard(entity.getUserId())).offer(pending)) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Too many creates waiting for the task writer"));
+        }
+        return pending.future();
+    }
+
+    @Override
+    public void close() {
+        // the creates queued so far are still written, the threads are not interrupted while they use the database
+        closed = true;
+        try {
+            for(BlockingQueue<Pending> queue : queues) {
+                queue.put(STOP);
+            }
+            for(Thread thread : threads) {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(int shard, BlockingQueue<Pending> queue) {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        boolean stop = false;
+        while(!stop) {
+            try {
+                Pending first = queue.take();
+                if(first == STOP) {
+                    break;
+                }
+                batch.add(first);
+                // with a delay of 0, a batch takes what has queued up while the previous one was committing
+                long start = System.nanoTime();
+                long deadline = start + maxDelayNanos;
+                while(batch.size() < maxBatch) {
+                    Pending next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if(next == null) {
+                        break;
+                    } else if(next == STOP) {
+                        stop = true;
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(shard, batch);
+                batchTimer.recordSince(start);
+            } catch(InterruptedException e) {
+                return;
+            } catch(RuntimeException e) {
+                logger.error("Task writer failed", e);
+                batch.forEach(pending -> pending.future().completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+        // creates that have raced close()
+        for(Pending pending = queue.poll(); pending != null; pending = queue.poll()) {
+            pending.future().completeExceptionally(new RejectedExecutionException("Task writer is closed"));
+        }
+    }
+
+    private void write(int shard, List<Pending> batch) {
+        try {
+            // a batch may contain the tasks of several users, each task already has its user
+            try(TaskRepository repository = repositoryFactory.openShardReadWrite(shard)) {
+                try {
+                    for(Pending pending : batch) {
+                        repository.createTask(pending.entity());
+                    }
+                } catch(RuntimeException e) {
+                    repository.setRollbackOnly();
+                    throw e;
+                }
+            }
+        } catch(RuntimeException e) {
+            if(batch.size() == 1) {
+                batch.get(0).future().completeExceptionally(e);
+            } else {
+                // one bad task must not fail the others: store them one by one
+                for(Pending pending : batch) {
+                    pending.entity().setVersion(null); // set by the failed flush, would make the entity look detached
+                    write(shard, List.of(pending));
+                }
+            }
+            return;
+        }
+        for(Pending pending : batch) {
+            pending.future().complete(pending.entity());
+        }
+    }
+
+    private record Pending(TaskEntity entity, CompletableFuture<TaskEntity> future) { }
+}
@@ -1,37 +1,113 @@
 package com.github.phoswald.sample.utils;
 
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.thymeleaf.IEngineConfiguration;
 import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.cache.StandardCacheManager;
 import org.thymeleaf.context.Context;
 import org.thymeleaf.templatemode.TemplateMode;
 import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+import org.thymeleaf.templateresolver.ITemplateResolver;
+import org.thymeleaf.templateresolver.TemplateResolution;
 
 public abstract class AbstractView<T> {
 
-    private static final TemplateEngine templateEngine = createTemplateEngine();
+    private static final Logger logger = LoggerFactory.getLogger(AbstractView.class);
+    private static final LongAdder renderCount = new LongAdder();
+    private static final LongAdder missCount = new LongAdder();
+    private static final Map<String, Metrics.Timer> renderTimers = new ConcurrentHashMap<>(); // views are created per request
+    private static final TemplateEngine templateEngine = createTemplateEngine(new ConfigProvider());
     private final String templateName;
     private final String modelName;
+    private final Metrics.Timer renderTimer;
 
     protected AbstractView(String templateName, String modelName) {
         this.templateName = templateName;
         this.modelName = modelName;
+        this.renderTimer = renderTimers.computeIfAbsent(templateName,
+                name -> Metrics.timer("template_render_seconds", "Template rendering time", "template", name));
     }
 
     public String render(T model) {
+        long start = System.nanoTime();
+        String page = templateEngine.process(templateName, createContext(model));
+        renderTimer.recordSince(start);
+        renderCount.increment();
+        return page;
+    }
+
+    public void render(T model, Writer writer) {
+        long start = System.nanoTime();
+        templateEngine.process(templateName, createContext(model), writer);
+        renderTimer.recordSince(start);
+        renderCount.increment();
+    }
+
+    public ChunkedPage renderChunked(T model) {
+        // the template is only processed as the chunks are requested
+        ChunkedPage page = new ChunkedPage(templateEngine.processThrottled(templateName, createContext(model)), renderTimer);
+        renderCount.increment();
+        return page;
+    }
+
+    private Context createContext(T model) {
         Context context = new Context();
         context.setVariable(modelName, model);
-        String page = templateEngine.process(templateName, context);
-        return page;
+        return context;
     }
 
-    private static TemplateEngine createTemplateEngine() {
+    public static CacheStatistics getCacheStatistics() {
+        long renders = renderCount.sum();
+        long misses = missCount.sum();
+        return new CacheStatistics(Math.max(0, renders - misses), misses);
+    }
+
+    private static TemplateEngine createTemplateEngine(ConfigProvider config) {
+        boolean devMode = Boolean.parseBoolean(config.getConfigProperty("app.templates.devmode").orElse("false"));
+        long cacheTtl = Long.parseLong(config.getConfigProperty("app.templates.cache.ttl").orElse("3600000"));
+        int cacheSize = Integer.parseInt(config.getConfigProperty("app.templates.cache.size").orElse("100"));
+        logger.info("Templates: devMode=" + devMode + ", cacheTtl=" + cacheTtl + ", cacheSize=" + cacheSize);
+
         ClassLoaderTemplateResolver templateResolver = new ClassLoaderTemplateResolver(AbstractView.class.getClassLoader());
         templateResolver.setTemplateMode(TemplateMode.HTML);
         templateResolver.setPrefix("templates/");
         templateResolver.setSuffix(".html");
-        templateResolver.setCacheable(false); // defaults to true, use false to update when modified
+        templateResolver.setCacheable(!devMode); // use false to update when modified
+        templateResolver.setCacheTTLMs(cacheTtl);
+
+        StandardCacheManager cacheManager = new StandardCacheManager();
+        cacheManager.setTemplateCacheMaxSize(cacheSize); // least recently used templates are evicted first
 
         TemplateEngine templateEngine = new TemplateEngine();
-        templateEngine.setTemplateResolver(templateResolver);
+        templateEngine.setTemplateResolver(new CountingTemplateResolver(templateResolver));
+        templateEngine.setCacheManager(cacheManager);
         return templateEngine;
     }
+
+    // The template manager only resolves (and then parses) a template if it is not found in the cache.
+    private record CountingTemplateResolver(ITemplateResolver delegate) implements ITemplateResolver {
+
+        @Override
+        public String getName() {
+            return delegate.getName();
+        }
+
+        @Override
+        public Integer getOrder() {
+            return delegate.getOrder();
+        }
+
+        @Override
+        public TemplateResolution resolveTemplate(IEngineConfiguration configuration, String ownerTemplate, String template,
+                Map<String, Object> templateResolutionAttributes) {
+            missCount.increment();
+            return delegate.resolveTemplate(configuration, ownerTemplate, template, templateResolutionAttributes);
+        }
+    }
 }
@@ -0,0 +1,41 @@
+package com.github.phoswald.sample.utils;
+
+/*
+ * The Accept-Encoding header of a request: an encoding is accepted if it is listed, or covered by *,
+ * with a quality above 0 (e.g. "gzip;q=0" refuses gzip).
+ */
+final class AcceptEncoding {
+
+    private AcceptEncoding() { }
+
+    static boolean accepts(String acceptEncoding, String encoding) {
+        if(acceptEncoding == null) {
+            return false;
+        }
+        double wildcard = 0;
+        for(String entry : acceptEncoding.split(",")) {
+            String[] parts = entry.split(";");
+            String name = parts[0].trim();
+            if(name.equalsIgnoreCase(encoding)) {
+                return parseQuality(parts) > 0;
+            } else if(name.equals("*")) {
+                wildcard = parseQuality(parts);
+            }
+        }
+        return wildcard > 0;
+    }
+
+    private static double parseQuality(String[] parts) {
+        for(int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if(parameter.regionMatches(true, 0, "q=", 0, 2)) {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim());
+                } catch(NumberFormatException e) {
+                    return 0; // invalid, not accepted
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,183 @@
+package com.github.phoswald.sample.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ratpack.exec.Blocking;
+import ratpack.exec.Downstream;
+import ratpack.exec.Promise;
+import ratpack.func.Factory;
+
+public class BlockingExecutor implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlockingExecutor.class);
+
+    public enum Mode {
+        RATPACK, // Ratpack's own (unbounded) blocking pool of platform threads
+        POOL, // dedicated bounded pool of platform threads
+        VIRTUAL // one virtual thread per request, database access limited by permits
+    }
+
+    private final Mode mode;
+    private final ExecutorService executor;
+    private final ExecutorService cleanupExecutor = Executors.newSingleThreadExecutor(createThreadFactory("blocking-cleanup-"));
+    private final Semaphore permits;
+    private final int maxInflight;
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    public BlockingExecutor(ConfigProvider config) {
+        mode = Mode.valueOf(config.getConfigProperty("app.exec.mode").orElse("pool").toUpperCase());
+        int poolSize = Integer.parseInt(config.getConfigProperty("app.exec.pool.size").orElse("16"));
+        int queueLimit = Integer.parseInt(config.getConfigProperty("app.exec.queue.limit").orElse("1000"));
+        int jdbcPermits = Integer.parseInt(config.getConfigProperty("app.exec.jdbc.permits").orElseGet(() -> Integer.toString( //
+                Integer.parseInt(config.getConfigProperty("app.jdbc.pool.size").orElse("10")) // a pool per shard
+                * Integer.parseInt(config.getConfigProperty("app.jdbc.shards").orElse("1")))));
+        logger.info("Blocking executor: mode=" + mode + ", poolSize=" + poolSize + ", queueLimit=" + queueLimit + ", jdbcPermits=" + jdbcPermits);
+        switch (mode) {
+            case POOL -> {
+                var pool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                        new ArrayBlockingQueue<>(queueLimit), createThreadFactory("blocking-"));
+                pool.allowCoreThreadTimeOut(true);
+                executor = pool;
+                permits = null;
+                maxInflight = Integer.MAX_VALUE;
+            }
+            case VIRTUAL -> {
+                executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("blocking-virtual-", 1).factory());
+                permits = new Semaphore(jdbcPermits, true);
+                maxInflight = jdbcPermits + queueLimit;
+            }
+            default -> {
+                executor = null;
+                permits = null;
+                maxInflight = Integer.MAX_VALUE;
+            }
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public <T> Promise<T> get(Supplier<T> work) {
+        return submit(permits == null ? work::get : () -> getWithPermit(work));
+    }
+
+    public <T> Promise<T> open(Function<Runnable, T> work) {
+        // for work that returns an open connection (e.g. a stream): the permit is held until the work's result runs
+        // the given callback, and the follow-up work is submitted with resume(), which needs no permit of its own
+        return submit(permits == null ? () -> work.apply(() -> { }) : () -> openWithPermit(work));
+    }
+
+    public <T> Promise<T> resume(Supplier<T> work) {
+        return submit(work::get);
+    }
+
+    private <T> Promise<T> submit(Factory<T> work) {
+        if (executor == null) {
+            return Blocking.get(work);
+        }
+        return Promise.async(downstream -> {
+            if (inflight.incrementAndGet() > maxInflight) {
+                inflight.decrementAndGet();
+                downstream.error(new RejectedExecutionException("Too many requests waiting for a database permit"));
+                return;
+            }
+            try {
+                executor.execute(() -> run(downstream, work));
+            } catch (RejectedExecutionException e) { // pool and queue are exhausted
+                inflight.decrementAndGet();
+                downstream.error(e);
+            }
+        });
+    }
+
+    public void cleanup(Runnable work) {
+        // fire and forget, e.g. the rollback of a cancelled stream; never inline, the caller is usually an event loop,
+        // and not on the pool, which may be saturated just then
+        cleanupExecutor.execute(() -> {
+            try {
+                work.run();
+            } catch (RuntimeException e) {
+                logger.warn("Cleanup failed", e);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        // after the server has stopped, work that has already been submitted (e.g. a rollback) may still finish
+        if (executor != null) {
+            executor.shutdown();
+        }
+        cleanupExecutor.shutdown();
+        try {
+            if ((executor != null && !executor.awaitTermination(10, TimeUnit.SECONDS)) || !cleanupExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("Blocking executor has not terminated");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> void run(Downstream<? super T> downstream, Factory<T> work) {
+        T result;
+        try {
+            result = work.create();
+        } catch (Throwable e) {
+            downstream.error(e);
+            return;
+        } finally {
+            inflight.decrementAndGet();
+        }
+        downstream.success(result);
+    }
+
+    private <T> T getWithPermit(Supplier<T> work) throws InterruptedException {
+        // thousands of parked virtual threads must not overwhelm the JDBC connections
+        permits.acquire();
+        try {
+            return work.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private <T> T openWithPermit(Function<Runnable, T> work) throws InterruptedException {
+        permits.acquire();
+        var released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        };
+        try {
+            return work.apply(release);
+        } catch (RuntimeException | Error e) {
+            release.run();
+            throw e;
+        }
+    }
+
+    private static ThreadFactory createThreadFactory(String prefix) {
+        var counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.phoswald.sample.utils;
+
+public class CacheStatistics {
+
+    private final long hits;
+    private final long misses;
+
+    public CacheStatistics(long hits, long misses) {
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public double getHitRatio() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.phoswald.sample.utils;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.thymeleaf.IThrottledTemplateProcessor;
+
+public class ChunkedPage {
+
+    private final IThrottledTemplateProcessor processor;
+    private final Metrics.Timer timer;
+    private long renderNanos;
+
+    ChunkedPage(IThrottledTemplateProcessor processor, Metrics.Timer timer) {
+        this.processor = processor;
+        this.timer = timer;
+    }
+
+    public boolean isFinished() {
+        return processor.isFinished();
+    }
+
+    public int writeChunk(OutputStream stream, int maxBytes) {
+        // the page is recorded once, with the time spent in all of its chunks
+        long start = System.nanoTime();
+        int bytes = processor.process(maxBytes, stream, StandardCharsets.UTF_8);
+        renderNanos += System.nanoTime() - start;
+        if(processor.isFinished()) {
+            timer.record(renderNanos);
+        }
+        return bytes;
+    }
+}
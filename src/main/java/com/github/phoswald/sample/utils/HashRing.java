@@ -0,0 +1,54 @@
+package com.github.phoswald.sample.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Consistent hashing of keys to shards. Every shard owns many points on the ring, so the keys are spread evenly,
+ * and adding a shard only moves the keys that the new shard takes over (about 1/n), see TaskRebalancer.
+ * The hash is stable across JVMs and restarts, unlike String.hashCode() it is well distributed.
+ */
+public class HashRing {
+
+    private static final int POINTS_PER_SHARD = 128;
+
+    private final int shards;
+    private final TreeMap<Long, Integer> ring = new TreeMap<>();
+
+    public HashRing(int shards) {
+        if(shards < 1) {
+            throw new IllegalArgumentException("Invalid number of shards: " + shards);
+        }
+        this.shards = shards;
+        for(int shard = 0; shard < shards; shard++) {
+            for(int point = 0; point < POINTS_PER_SHARD; point++) {
+                ring.put(hash("shard-" + shard + "-" + point), shard);
+            }
+        }
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public int getShard(String key) {
+        if(shards == 1) {
+            return 0;
+        }
+        Map.Entry<Long, Integer> entry = ring.ceilingEntry(hash(key));
+        return entry == null ? ring.firstEntry().getValue() : entry.getValue();
+    }
+
+    static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JDK has MD5
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.phoswald.sample.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public class LruCache<K, V> {
+
+    private final long ttlNanos;
+    private final Map<K, Entry<V>> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private long generation; // incremented on every invalidation, guarded by this
+
+    public LruCache(int maxSize, long ttlMillis) {
+        this.ttlNanos = ttlMillis * 1_000_000;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public V get(K key, Supplier<V> loader) {
+        long loadGeneration;
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && System.nanoTime() - entry.created() < ttlNanos) {
+                hits.increment();
+                return entry.value();
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+            loadGeneration = generation;
+        }
+        misses.increment();
+        V value = loader.get();
+        if (value != null) {
+            synchronized (this) {
+                // a value loaded while a concurrent write was invalidating may already be stale
+                if (generation == loadGeneration) {
+                    entries.put(key, new Entry<>(value, System.nanoTime()));
+                }
+            }
+        }
+        return value;
+    }
+
+    public synchronized void invalidate(K key) {
+        generation++;
+        entries.remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    public CacheStatistics getStatistics() {
+        return new CacheStatistics(hits.sum(), misses.sum());
+    }
+
+    private record Entry<V>(V value, long created) { }
+}
@@ -0,0 +1,178 @@
+package com.github.phoswald.sample.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/*
+ * Registry of latency histograms, counters and gauges, exposed in the Prometheus text format.
+ * Timers and route metrics are looked up or created once; recording a value only updates atomic counters.
+ */
+public class Metrics {
+
+    private static final double[] BUCKETS = { 0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10 };
+    private static final long[] BUCKET_NANOS = createBucketNanos();
+
+    private static final Map<String, Family> families = new ConcurrentSkipListMap<>();
+    private static final Map<String, Map<String, RouteMetrics>> routes = new ConcurrentHashMap<>();
+
+    private Metrics() { }
+
+    public static Timer timer(String name, String help, String label, String value) {
+        Family family = families.computeIfAbsent(name, key -> new Family(name, help, "histogram"));
+        return (Timer) family.series.computeIfAbsent(label + "=\"" + escape(value) + "\"", key -> new Timer());
+    }
+
+    public static void gauge(String name, String help, String label, String value, DoubleSupplier supplier) {
+        register(name, help, "gauge", label, value, supplier);
+    }
+
+    public static void gauge(String name, String help, DoubleSupplier supplier) {
+        gauge(name, help, null, null, supplier);
+    }
+
+    public static void counter(String name, String help, String label, String value, LongSupplier supplier) {
+        // the supplier must never decrease, e.g. the hits of a cache since startup
+        register(name, help, "counter", label, value, supplier);
+    }
+
+    public static void counter(String name, String help, LongSupplier supplier) {
+        counter(name, help, null, null, supplier);
+    }
+
+    private static void register(String name, String help, String type, String label, String value, Object supplier) {
+        Family family = families.computeIfAbsent(name, key -> new Family(name, help, type));
+        family.series.put(label == null ? "" : label + "=\"" + escape(value) + "\"", supplier);
+    }
+
+    public static void recordRequest(String route, String method, int status, long nanos) {
+        Map<String, RouteMetrics> methods = routes.get(route);
+        if(methods == null) {
+            methods = routes.computeIfAbsent(route, key -> new ConcurrentHashMap<>());
+        }
+        RouteMetrics metrics = methods.get(method);
+        if(metrics == null) {
+            metrics = methods.computeIfAbsent(method, key -> new RouteMetrics(route, method));
+        }
+        metrics.timer.record(nanos);
+        metrics.statuses.incrementAndGet(Math.clamp(status / 100, 1, 5));
+    }
+
+    public static String format() {
+        var buffer = new StringBuilder(16 * 1024);
+        buffer.append("# HELP http_server_requests_seconds Request latency by route and method\n");
+        buffer.append("# TYPE http_server_requests_seconds histogram\n");
+        routes.values().forEach(methods -> methods.values().forEach(
+                metrics -> metrics.timer.format(buffer, "http_server_requests_seconds", metrics.labels)));
+        buffer.append("# HELP http_server_responses_total Responses by route, method and status class\n");
+        buffer.append("# TYPE http_server_responses_total counter\n");
+        routes.values().forEach(methods -> methods.values().forEach(metrics -> {
+            for(int i = 1; i <= 5; i++) {
+                long count = metrics.statuses.get(i);
+                if(count > 0) {
+                    buffer.append("http_server_responses_total{").append(metrics.labels).append(",status=\"").append(i).append("xx\"} ")
+                            .append(count).append('\n');
+                }
+            }
+        }));
+        families.values().forEach(family -> family.format(buffer));
+        return buffer.toString();
+    }
+
+    private static long[] createBucketNanos() {
+        long[] nanos = new long[BUCKETS.length];
+        for(int i = 0; i < BUCKETS.length; i++) {
+            nanos[i] = (long) (BUCKETS[i] * 1e9);
+        }
+        return nanos;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    public static class Timer {
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_NANOS.length + 1); // last one is +Inf
+        private final LongAdder sumNanos = new LongAdder();
+
+        private Timer() { }
+
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public void record(long nanos) {
+            int i = 0;
+            while(i < BUCKET_NANOS.length && nanos > BUCKET_NANOS[i]) {
+                i++;
+            }
+            buckets.incrementAndGet(i);
+            sumNanos.add(nanos);
+        }
+
+        private void format(StringBuilder buffer, String name, String labels) {
+            String separator = labels.isEmpty() ? "" : ",";
+            long count = 0;
+            for(int i = 0; i <= BUCKETS.length; i++) {
+                count += buckets.get(i);
+                buffer.append(name).append("_bucket{").append(labels).append(separator).append("le=\"")
+                        .append(i < BUCKETS.length ? Double.toString(BUCKETS[i]) : "+Inf").append("\"} ").append(count).append('\n');
+            }
+            String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+            buffer.append(name).append("_sum").append(braces).append(' ').append(sumNanos.sum() / 1e9).append('\n');
+            buffer.append(name).append("_count").append(braces).append(' ').append(count).append('\n');
+        }
+    }
+
+    private static class RouteMetrics {
+
+        private final String labels;
+        private final Timer timer = new Timer();
+        private final AtomicLongArray statuses = new AtomicLongArray(6); // indexed by status / 100
+
+        private RouteMetrics(String route, String method) {
+            labels = "route=\"" + escape(route) + "\",method=\"" + escape(method) + "\"";
+        }
+    }
+
+    private static class Family {
+
+        private final String name;
+        private final String help;
+        private final String type;
+        private final Map<String, Object> series = new ConcurrentSkipListMap<>(); // Timer, DoubleSupplier or LongSupplier by labels
+
+        private Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+
+        private void format(StringBuilder buffer) {
+            buffer.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            buffer.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+            series.forEach((labels, value) -> {
+                if(value instanceof Timer timer) {
+                    timer.format(buffer, name, labels);
+                } else if(value instanceof DoubleSupplier supplier) {
+                    formatSample(buffer, labels).append(supplier.getAsDouble()).append('\n');
+                } else if(value instanceof LongSupplier supplier) {
+                    formatSample(buffer, labels).append(supplier.getAsLong()).append('\n');
+                }
+            });
+        }
+
+        private StringBuilder formatSample(StringBuilder buffer, String labels) {
+            buffer.append(name);
+            if(!labels.isEmpty()) {
+                buffer.append('{').append(labels).append('}');
+            }
+            return buffer.append(' ');
+        }
+    }
+}
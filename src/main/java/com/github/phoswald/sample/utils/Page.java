@@ -0,0 +1,28 @@
+package com.github.phoswald.sample.utils;
+
+import java.util.List;
+
+public class Page<T> {
+
+    private final List<T> items;
+    private final int limit;
+    private final String next;
+
+    public Page(List<T> items, int limit, String next) {
+        this.items = items;
+        this.limit = limit;
+        this.next = next;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public String getNext() {
+        return next;
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.phoswald.sample.utils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+public class PoolMetrics implements MetricsTrackerFactory {
+
+    private final LongAdder acquireCount = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final LongAccumulator acquireNanosMax = new LongAccumulator(Math::max, 0);
+    private final LongAdder timeoutCount = new LongAdder();
+    private final List<PoolStats> poolStats = new CopyOnWriteArrayList<>(); // one pool per shard, reported as a sum
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolStats.add(poolStats);
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquireCount.increment();
+                acquireNanos.add(elapsedAcquiredNanos);
+                acquireNanosMax.accumulate(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeoutCount.increment();
+            }
+        };
+    }
+
+    public PoolStatistics getStatistics() {
+        var result = new PoolStatistics();
+        for (PoolStats stats : poolStats) {
+            result.active += stats.getActiveConnections();
+            result.idle += stats.getIdleConnections();
+            result.total += stats.getTotalConnections();
+            result.max += stats.getMaxConnections();
+            result.waiting += stats.getPendingThreads();
+        }
+        long count = acquireCount.sum();
+        result.acquired = count;
+        result.acquireMillisAvg = count == 0 ? 0 : acquireNanos.sum() / 1e6 / count;
+        result.acquireMillisMax = acquireNanosMax.get() / 1e6;
+        result.timeouts = timeoutCount.sum();
+        return result;
+    }
+
+    public static class PoolStatistics {
+        public int active;
+        public int idle;
+        public int total;
+        public int max;
+        public int waiting;
+        public long acquired;
+        public double acquireMillisAvg;
+        public double acquireMillisMax;
+        public long timeouts;
+    }
+}
@@ -0,0 +1,142 @@
+package com.github.phoswald.sample.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import io.netty.buffer.ByteBuf;
+
+/*
+ * Blocking InputStream over a stream of buffers, e.g. the body of a request, for parsers that pull their input on a
+ * blocking thread. Only a few buffers are requested ahead, so the memory used does not depend on the size of the body.
+ */
+public class PublisherInputStream extends InputStream implements Subscriber<ByteBuf> {
+
+    private static final Object END = new Object();
+
+    private final int prefetch;
+    private final Executor upstream;
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>(); // ByteBuf, Throwable or END
+    private volatile Subscription subscription;
+    private ByteBuf current;
+    private boolean finished;
+    private boolean closed;
+
+    public PublisherInputStream(int prefetch, Executor upstream) {
+        // demand is signalled through upstream (e.g. the event loop of the request), not by the reading thread
+        this.prefetch = prefetch;
+        this.upstream = upstream;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        this.subscription = subscription;
+        synchronized(this) {
+            if(closed) {
+                subscription.cancel();
+                return;
+            }
+        }
+        subscription.request(prefetch);
+    }
+
+    @Override
+    public synchronized void onNext(ByteBuf buffer) {
+        if(closed) {
+            buffer.release();
+        } else {
+            queue.add(buffer);
+        }
+    }
+
+    @Override
+    public void onError(Throwable e) {
+        queue.add(e);
+    }
+
+    @Override
+    public void onComplete() {
+        queue.add(END);
+    }
+
+    @Override
+    public int read() throws IOException {
+        ByteBuf buffer = next();
+        return buffer == null ? -1 : buffer.readUnsignedByte();
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if(length == 0) {
+            return 0;
+        }
+        ByteBuf buffer = next();
+        if(buffer == null) {
+            return -1;
+        }
+        int count = Math.min(length, buffer.readableBytes());
+        buffer.readBytes(bytes, offset, count);
+        return count;
+    }
+
+    private ByteBuf next() throws IOException {
+        while(current == null || !current.isReadable()) {
+            if(current != null) {
+                current.release();
+                current = null;
+                upstream.execute(() -> subscription.request(1));
+            }
+            if(finished) {
+                return null;
+            }
+            Object item = take();
+            if(item == END) {
+                finished = true;
+            } else if(item instanceof Throwable e) {
+                finished = true;
+                throw new IOException("Failed to read: " + e.getMessage(), e);
+            } else {
+                current = (ByteBuf) item;
+            }
+        }
+        return current;
+    }
+
+    private Object take() throws IOException {
+        try {
+            return queue.take();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    @Override
+    public void close() {
+        // by the reading thread, also before the end, e.g. if parsing failed
+        if(current != null) {
+            current.release();
+            current = null;
+        }
+        synchronized(this) {
+            if(closed) {
+                return;
+            }
+            closed = true;
+            for(Object item = queue.poll(); item != null; item = queue.poll()) {
+                if(item instanceof ByteBuf buffer) {
+                    buffer.release();
+                }
+            }
+        }
+        if(!finished && subscription != null) {
+            upstream.execute(() -> subscription.cancel());
+        }
+    }
+}
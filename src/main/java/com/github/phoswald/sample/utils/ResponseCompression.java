@@ -0,0 +1,194 @@
+package com.github.phoswald.sample.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import ratpack.handling.Context;
+import ratpack.http.Response;
+import ratpack.stream.Streams;
+
+/*
+ * Compresses the responses created by the application's own handlers. Ratpack's built-in compressor has no size
+ * threshold, content type filter or level, so it is disabled (Response.noCompress()) for all responses.
+ * Brotli would need a native library and is not offered.
+ */
+public class ResponseCompression {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCompression.class);
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final int level;
+    private final int minSize;
+    private final Set<String> types;
+
+    public ResponseCompression(ConfigProvider config) {
+        level = Integer.parseInt(config.getConfigProperty("app.http.compression.level").orElse("6"));
+        minSize = Integer.parseInt(config.getConfigProperty("app.http.compression.minsize").orElse("1024"));
+        types = Stream.of(config.getConfigProperty("app.http.compression.types")
+                .orElse("text/html,text/xml,text/plain,application/json,application/x-ndjson").split(","))
+                .map(String::trim).filter(type -> !type.isEmpty()).collect(Collectors.toUnmodifiableSet());
+        logger.info("Response compression: level=" + level + ", minSize=" + minSize + ", types=" + types);
+    }
+
+    public void send(Context ctx, String contentType, ByteBuf body) {
+        Response response = ctx.getResponse().noCompress().contentType(contentType);
+        String encoding = selectEncoding(ctx, contentType);
+        if(encoding == null || body.readableBytes() < minSize) {
+            response.send(body);
+            return;
+        }
+        ByteBuf compressed = ctx.get(ByteBufAllocator.class).buffer(body.readableBytes() / 4 + 64);
+        try(OutputStream stream = createStream(new ByteBufStream(compressed), encoding)) {
+            body.readBytes(stream, body.readableBytes());
+        } catch(IOException | RuntimeException e) {
+            compressed.release();
+            throw new IllegalStateException("Failed to compress response", e);
+        } finally {
+            body.release();
+        }
+        response.getHeaders().set("content-encoding", encoding);
+        response.send(compressed);
+    }
+
+    public void sendStream(Context ctx, String contentType, Publisher<ByteBuf> chunks) {
+        // the size is not known up front, streamed responses are compressed if the type qualifies
+        Response response = ctx.getResponse().noCompress().contentType(contentType);
+        String encoding = selectEncoding(ctx, contentType);
+        if(encoding == null) {
+            response.sendStream(chunks);
+            return;
+        }
+        response.getHeaders().set("content-encoding", encoding);
+        response.sendStream(compress(ctx.get(ByteBufAllocator.class), encoding, chunks));
+    }
+
+    private Publisher<ByteBuf> compress(ByteBufAllocator allocator, String encoding, Publisher<ByteBuf> chunks) {
+        var target = new ByteBufStream(null);
+        OutputStream stream;
+        try {
+            stream = createStream(target, encoding);
+        } catch(IOException e) {
+            throw new IllegalStateException("Failed to compress response", e);
+        }
+        // every chunk is flushed (SYNC_FLUSH), so the client can start rendering before the end of the stream
+        Publisher<ByteBuf> compressed = Streams.map(chunks, chunk -> {
+            target.buffer = allocator.buffer(chunk.readableBytes() / 2 + 64);
+            try {
+                chunk.readBytes(stream, chunk.readableBytes());
+                stream.flush();
+                return target.buffer;
+            } catch(IOException | RuntimeException e) {
+                target.buffer.release();
+                throw e;
+            } finally {
+                chunk.release();
+            }
+        });
+        Publisher<ByteBuf> trailer = Streams.yield(request -> {
+            if(request.getRequestNum() > 0) {
+                return null;
+            }
+            target.buffer = allocator.buffer(64);
+            stream.close();
+            return target.buffer;
+        });
+        // close() ends the deflater when the stream completes, its native memory must also be freed otherwise
+        return Streams.wiretap(Streams.concat(List.of(compressed, trailer)), event -> {
+            if(event.isCancel() || event.isError()) {
+                ((DeflaterStream) stream).end();
+            }
+        });
+    }
+
+    private String selectEncoding(Context ctx, String contentType) {
+        int separator = contentType.indexOf(';');
+        if(level == 0 || !types.contains(separator < 0 ? contentType : contentType.substring(0, separator).trim())) {
+            return null;
+        }
+        ctx.getResponse().getHeaders().set("vary", "accept-encoding");
+        String acceptEncoding = ctx.getRequest().getHeaders().get("accept-encoding");
+        if(AcceptEncoding.accepts(acceptEncoding, "gzip")) {
+            return "gzip";
+        } else if(AcceptEncoding.accepts(acceptEncoding, "deflate")) {
+            return "deflate";
+        } else {
+            return null;
+        }
+    }
+
+    private OutputStream createStream(OutputStream target, String encoding) throws IOException {
+        return encoding.equals("gzip") ? new GzipStream(target, level) : new ZlibStream(target, level);
+    }
+
+    // ends the deflater without writing the rest of the stream
+    private interface DeflaterStream {
+        void end();
+    }
+
+    private static class GzipStream extends GZIPOutputStream implements DeflaterStream {
+
+        private GzipStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE, true);
+            def.setLevel(level);
+        }
+
+        @Override
+        public void end() {
+            def.end();
+        }
+    }
+
+    private static class ZlibStream extends DeflaterOutputStream implements DeflaterStream {
+
+        private ZlibStream(OutputStream out, int level) {
+            super(out, new Deflater(level), BUFFER_SIZE, true);
+        }
+
+        @Override
+        public void end() {
+            def.end();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                def.end(); // not done by DeflaterOutputStream for a deflater passed in
+            }
+        }
+    }
+
+    // writes into the current buffer, which is replaced for every chunk of a stream
+    private static class ByteBufStream extends OutputStream {
+
+        private ByteBuf buffer;
+
+        private ByteBufStream(ByteBuf buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) {
+            buffer.writeByte(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            buffer.writeBytes(b, off, len);
+        }
+    }
+}
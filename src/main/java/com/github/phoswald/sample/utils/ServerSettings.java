@@ -0,0 +1,91 @@
+package com.github.phoswald.sample.utils;
+
+import java.time.Duration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.epoll.Epoll;
+import ratpack.server.ServerConfig;
+import ratpack.server.ServerConfigBuilder;
+
+/*
+ * Netty and Ratpack settings of the HTTP server. Settings that are not configured keep Ratpack's defaults.
+ * Ratpack chooses the transport itself: the native epoll transport if it is available (Linux on x86_64 or aarch64,
+ * see pom.xml), NIO otherwise.
+ */
+public class ServerSettings {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServerSettings.class);
+
+    public enum Transport {
+        AUTO, // epoll if available
+        EPOLL, // fails if not available
+        NIO
+    }
+
+    private final Transport transport;
+    private final Integer threads;
+    private final Integer maxContentLength;
+    private final Integer backlog;
+    private final Long idleTimeout;
+    private final String allocator;
+    private final boolean h2c;
+
+    public ServerSettings(ConfigProvider config) {
+        transport = Transport.valueOf(config.getConfigProperty("app.http.transport").orElse("auto").toUpperCase());
+        threads = config.getConfigProperty("app.http.threads").map(Integer::valueOf).orElse(null);
+        maxContentLength = config.getConfigProperty("app.http.maxContentLength").map(Integer::valueOf).orElse(null);
+        backlog = config.getConfigProperty("app.http.backlog").map(Integer::valueOf).orElse(null);
+        idleTimeout = config.getConfigProperty("app.http.idleTimeout").map(Long::valueOf).orElse(null);
+        allocator = config.getConfigProperty("app.http.allocator").map(String::toLowerCase).orElse(null);
+        h2c = Boolean.parseBoolean(config.getConfigProperty("app.http.h2c").orElse("false"));
+    }
+
+    public void prepareTransport() {
+        // must happen before Netty loads its native transport and its default allocator, i.e. before the server is started
+        if(allocator != null) {
+            // Ratpack uses ByteBufAllocator.DEFAULT for the channels and in the registry of the handlers
+            System.setProperty("io.netty.allocator.type", allocator);
+        }
+        if(transport == Transport.NIO) {
+            System.setProperty("io.netty.transport.noNative", "true");
+        } else if(transport == Transport.EPOLL && !Epoll.isAvailable()) {
+            throw new IllegalStateException("Native epoll transport is not available", Epoll.unavailabilityCause());
+        } else if(transport == Transport.AUTO && !Epoll.isAvailable()) {
+            // e.g. not Linux, or an architecture without a native library in the class path (see pom.xml)
+            logger.info("Native epoll transport is not available, falling back to NIO: " + Epoll.unavailabilityCause());
+        }
+        if(h2c) {
+            // Ratpack 1.x only speaks HTTP/1.1, h2c has to be terminated by a proxy in front of the application
+            logger.warn("HTTP/2 cleartext (app.http.h2c) is not supported by Ratpack 1.x and is ignored");
+        }
+    }
+
+    public void apply(ServerConfigBuilder config) {
+        if(threads != null) {
+            config.threads(threads);
+        }
+        if(maxContentLength != null) {
+            config.maxContentLength(maxContentLength);
+        }
+        if(backlog != null) {
+            config.connectQueueSize(backlog);
+        }
+        if(idleTimeout != null) {
+            config.idleTimeout(Duration.ofMillis(idleTimeout));
+        }
+    }
+
+    public String describe(ServerConfig config) {
+        return "transport=" + (transport != Transport.NIO && Epoll.isAvailable() ? "epoll" : "nio") //
+                + ", threads=" + config.getThreads() //
+                + ", maxContentLength=" + config.getMaxContentLength() //
+                + ", backlog=" + config.getConnectQueueSize().map(Object::toString).orElse("default") //
+                + ", idleTimeout=" + (config.getIdleTimeout().isZero() ? "none" : config.getIdleTimeout().toMillis()) //
+                + ", allocator=" + (ByteBufAllocator.DEFAULT instanceof PooledByteBufAllocator ? "pooled" : "unpooled") // the effective one
+                + ", protocol=HTTP/1.1";
+    }
+}
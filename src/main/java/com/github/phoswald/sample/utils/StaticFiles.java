@@ -0,0 +1,136 @@
+package com.github.phoswald.sample.utils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ratpack.exec.Blocking;
+import ratpack.file.MimeTypes;
+import ratpack.handling.Context;
+import ratpack.handling.Handler;
+import ratpack.http.Request;
+import ratpack.http.Response;
+import ratpack.server.BaseDir;
+
+/*
+ * Serves the files below the base dir with strong validators, long-lived caching for fingerprinted names
+ * and precompressed variants (.gz) produced at build time by src/build/StaticCompressor.java.
+ * Files on the default file system are sent with Netty's FileRegion (sendfile), so the content is not copied into the heap.
+ * This needs app.http.static.dir (set by the distribution), files found on the class path are inside the jar.
+ */
+public class StaticFiles implements Handler {
+
+    private static final Logger logger = LoggerFactory.getLogger(StaticFiles.class);
+    private static final Pattern FINGERPRINTED = Pattern.compile(".*[.-][0-9a-f]{8,}\\.[a-z0-9]+");
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final String INDEX_FILE = "index.html";
+
+    private final String cacheControl;
+    private final Path baseDir;
+
+    public StaticFiles(ConfigProvider config) {
+        long maxAge = Long.parseLong(config.getConfigProperty("app.http.static.maxage").orElse("0"));
+        cacheControl = maxAge > 0 ? "public, max-age=" + maxAge : "no-cache"; // no-cache: always revalidate
+        baseDir = config.getConfigProperty("app.http.static.dir").map(Path::of).orElseGet(() -> BaseDir.find("resources/.ratpack")).toAbsolutePath();
+        logger.info("Static files: maxAge=" + maxAge + ", dir=" + baseDir.toUri());
+    }
+
+    public Path getBaseDir() {
+        return baseDir;
+    }
+
+    @Override
+    public void handle(Context ctx) {
+        Request request = ctx.getRequest();
+        // HEAD gets the same headers as GET, Ratpack leaves out the body
+        Path file = request.getMethod().isGet() || request.getMethod().isHead() ? ctx.file(request.getPath()) : null;
+        if(file == null) {
+            ctx.next();
+            return;
+        }
+        Blocking.get(() -> resolve(file, request.getPath(), request.getHeaders().get("accept-encoding"))).then(resolved -> {
+            if(resolved == null) {
+                ctx.next();
+            } else if(resolved.redirect) {
+                ctx.redirect("/" + request.getPath() + "/");
+            } else {
+                send(ctx, resolved);
+            }
+        });
+    }
+
+    private Resolved resolve(Path file, String requestPath, String acceptEncoding) throws Exception {
+        if(Files.isDirectory(file)) {
+            if(!requestPath.isEmpty() && !requestPath.endsWith("/")) {
+                return new Resolved(true);
+            }
+            file = file.resolve(INDEX_FILE);
+        }
+        if(!Files.isRegularFile(file)) {
+            return null;
+        }
+        Resolved resolved = new Resolved(false);
+        resolved.file = file;
+        resolved.attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        resolved.variant = file;
+        resolved.hasVariants = Files.isRegularFile(sibling(file, ".gz"));
+        if(resolved.hasVariants && AcceptEncoding.accepts(acceptEncoding, "gzip")) {
+            resolved.variant = sibling(file, ".gz");
+            resolved.encoding = "gzip";
+        }
+        resolved.length = Files.size(resolved.variant);
+        return resolved;
+    }
+
+    private void send(Context ctx, Resolved resolved) {
+        // the validators are derived from the original file; each encoding is a different representation
+        Validator validator = Validator.strong(Long.toHexString(resolved.attributes.size()) + "-"
+                + Long.toHexString(resolved.attributes.lastModifiedTime().toMillis())
+                + (resolved.encoding == null ? "" : "-" + resolved.encoding), resolved.attributes.lastModifiedTime().toInstant());
+        String fileName = resolved.file.getFileName().toString();
+
+        Response response = ctx.getResponse();
+        response.getHeaders().set("etag", validator.getEtag());
+        response.getHeaders().set("last-modified", validator.getLastModified());
+        response.getHeaders().set("cache-control", FINGERPRINTED.matcher(fileName).matches() ? IMMUTABLE : cacheControl);
+        if(resolved.hasVariants) {
+            response.getHeaders().set("vary", "accept-encoding");
+        }
+        if(validator.isNotModified(ctx.getRequest())) {
+            response.status(304).send();
+            return;
+        }
+        if(resolved.encoding != null) {
+            response.getHeaders().set("content-encoding", resolved.encoding);
+        }
+        // already compressed (or not worth it), and compression would prevent sendfile
+        response.noCompress();
+        // the file region is sent with the length given here
+        response.getHeaders().set("content-length", resolved.length);
+        response.contentType(ctx.get(MimeTypes.class).getContentType(fileName));
+        response.sendFile(resolved.variant);
+    }
+
+    private static Path sibling(Path file, String suffix) {
+        return file.resolveSibling(file.getFileName() + suffix);
+    }
+
+    private static class Resolved {
+
+        private final boolean redirect;
+        private Path file;
+        private Path variant;
+        private String encoding;
+        private long length;
+        private boolean hasVariants;
+        private BasicFileAttributes attributes;
+
+        private Resolved(boolean redirect) {
+            this.redirect = redirect;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.phoswald.sample.utils;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+import ratpack.http.Request;
+
+/*
+ * HTTP validators of a representation (RFC 9110 8.8), used to answer conditional requests.
+ */
+public class Validator {
+
+    private final String etag;
+    private final Instant lastModified;
+
+    public Validator(String etag, Instant lastModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    public static Validator weak(String tag, Instant lastModified) {
+        return new Validator("W/\"" + tag + "\"", lastModified);
+    }
+
+    public static Validator strong(String tag, Instant lastModified) {
+        return new Validator("\"" + tag + "\"", lastModified);
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(lastModified.atZone(ZoneOffset.UTC));
+    }
+
+    public boolean isNotModified(Request request) {
+        String ifNoneMatch = request.getHeaders().get("if-none-match");
+        if(ifNoneMatch != null) {
+            // If-Modified-Since is ignored if If-None-Match is present (RFC 9110 13.1.3)
+            return matches(ifNoneMatch, false);
+        }
+        String ifModifiedSince = request.getHeaders().get("if-modified-since");
+        if(ifModifiedSince != null) {
+            try {
+                Instant since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                return lastModified.getEpochSecond() <= since.getEpochSecond(); // HTTP dates have a resolution of seconds
+            } catch(DateTimeParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    public boolean matches(String header, boolean strongComparison) {
+        // weak comparison for If-None-Match, strong comparison for If-Match (RFC 9110 8.8.3.2)
+        if(strongComparison && etag.startsWith("W/")) {
+            return header.trim().equals("*");
+        }
+        String opaqueTag = opaqueTag(etag);
+        for(String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if(candidate.equals("*")) {
+                return true;
+            }
+            if(strongComparison ? candidate.equals(etag) : opaqueTag(candidate).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaqueTag(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+}
@@ -0,0 +1,125 @@
+package com.github.phoswald.sample.utils;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.Unmarshaller;
+import jakarta.xml.bind.annotation.XmlRootElement;
+
+/*
+ * Replaces the jakarta.xml.bind.JAXB convenience methods, which look up the context and create a new
+ * (un)marshaller for every call. Contexts are thread-safe and created once per class, (un)marshallers
+ * are not thread-safe and are reused per thread.
+ */
+public class XmlBinder {
+
+    private final XMLInputFactory inputFactory = createInputFactory();
+    private final Map<Class<?>, Binding> bindings = new ConcurrentHashMap<>();
+
+    public XmlBinder(Class<?>... classes) {
+        for(Class<?> clazz : classes) {
+            getBinding(clazz); // fail at startup, not on the first request
+        }
+    }
+
+    public <T> T read(Class<T> clazz, InputStream stream) {
+        Binding binding = getBinding(clazz);
+        try {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(stream);
+            try {
+                return binding.unmarshaller.get().unmarshal(reader, clazz).getValue();
+            } finally {
+                reader.close();
+            }
+        } catch(JAXBException | XMLStreamException e) {
+            throw new IllegalArgumentException("Invalid XML: " + e.getMessage(), e);
+        }
+    }
+
+    public void write(Object object, OutputStream stream) {
+        Binding binding = getBinding(object.getClass());
+        try {
+            binding.marshaller.get().marshal(binding.wrap(object), stream);
+        } catch(JAXBException e) {
+            throw new IllegalStateException("Failed to serialize " + object.getClass().getName(), e);
+        }
+    }
+
+    private Binding getBinding(Class<?> clazz) {
+        Binding binding = bindings.get(clazz);
+        if(binding == null) {
+            binding = bindings.computeIfAbsent(clazz, Binding::new);
+        }
+        return binding;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    private static class Binding {
+
+        private final Class<?> clazz;
+        private final QName rootName;
+        private final ThreadLocal<Marshaller> marshaller;
+        private final ThreadLocal<Unmarshaller> unmarshaller;
+
+        private Binding(Class<?> clazz) {
+            this.clazz = clazz;
+            try {
+                JAXBContext context = JAXBContext.newInstance(clazz);
+                // same as JAXB.marshal(): classes without @XmlRootElement get their decapitalized name
+                rootName = clazz.isAnnotationPresent(XmlRootElement.class) ? null : new QName(decapitalize(clazz.getSimpleName()));
+                marshaller = ThreadLocal.withInitial(() -> createMarshaller(context));
+                unmarshaller = ThreadLocal.withInitial(() -> createUnmarshaller(context));
+            } catch(JAXBException e) {
+                throw new IllegalStateException("Failed to create JAXB context for " + clazz.getName(), e);
+            }
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private Object wrap(Object object) {
+            return rootName == null ? object : new JAXBElement(rootName, clazz, object);
+        }
+
+        private static String decapitalize(String name) {
+            // as java.beans.Introspector.decapitalize(), without depending on the java.desktop module
+            if(name.length() > 1 && Character.isUpperCase(name.charAt(1)) && Character.isUpperCase(name.charAt(0))) {
+                return name;
+            }
+            return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+        }
+
+        private static Marshaller createMarshaller(JAXBContext context) {
+            try {
+                Marshaller marshaller = context.createMarshaller();
+                marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+                return marshaller;
+            } catch(JAXBException e) {
+                throw new IllegalStateException("Failed to create marshaller", e);
+            }
+        }
+
+        private static Unmarshaller createUnmarshaller(JAXBContext context) {
+            try {
+                return context.createUnmarshaller();
+            } catch(JAXBException e) {
+                throw new IllegalStateException("Failed to create unmarshaller", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.github.phoswald.sample;
+
+import static io.restassured.RestAssured.given;
+import static io.restassured.RestAssured.when;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.phoswald.sample.utils.ConfigProvider;
+
+/*
+ * The same routes as ApplicationTest, but with the group-commit writer and two shards.
+ */
+class ApplicationGroupCommitTest {
+
+    private final ApplicationModule module = new TestModule(); // closed by testee.stop()
+
+    private final Application testee = module.getApplication();
+
+    @BeforeEach
+    void start() throws Exception {
+        testee.start();
+    }
+
+    @AfterEach
+    void cleanup() throws Exception {
+        testee.stop();
+    }
+
+    @Test
+    void postTasksGroupCommit() {
+        HttpClient client = HttpClient.newHttpClient();
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for(int i = 0; i < 20; i++) {
+            responses.add(client.sendAsync(HttpRequest.newBuilder(URI.create("http://localhost:8080/app/rest/tasks"))
+                    .header("content-type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"title\":\"Concurrent " + i + "\"}")).build(), HttpResponse.BodyHandlers.ofString()));
+        }
+        List<String> taskIds = new ArrayList<>();
+        for(CompletableFuture<HttpResponse<String>> response : responses) {
+            assertEquals(200, response.join().statusCode());
+            taskIds.add(response.join().body().replaceAll(".*\"taskId\":\"([0-9a-f]+)\".*", "$1"));
+        }
+
+        when().
+            get("/app/rest/tasks").
+        then().
+            statusCode(200).
+            body("$.size()", equalTo(20));
+
+        for(String taskId : taskIds) {
+            when().
+                delete("/app/rest/tasks/" + taskId).
+            then().
+                statusCode(200);
+        }
+    }
+
+    @Test
+    void tasksOnSeveralShards() throws InterruptedException {
+        String alice = "alice";
+        String other = findUserOnOtherShard(alice);
+        assertNotEquals(module.getHashRing().getShard(alice), module.getHashRing().getShard(other));
+
+        for(String userId : List.of(alice, other)) {
+            var taskId = new AtomicReference<String>();
+            given().
+                header("x-user-id", userId).
+                contentType("application/json").
+                body("{\"title\":\"Sharded task of " + userId + "\"}").
+            when().
+                post("/app/rest/tasks").
+            then().
+                statusCode(200).
+                body("taskId", PeekMatcher.peek(taskId::set)).
+                body("userId", equalTo(userId));
+            awaitSearchIndex();
+
+            given().
+                header("x-user-id", userId).
+            when().
+                get("/app/rest/tasks").
+            then().
+                statusCode(200).
+                body("$.size()", equalTo(1)).
+                body("[0].taskId", equalTo(taskId.get()));
+
+            given().
+                header("x-user-id", userId).
+            when().
+                get("/app/rest/tasks/search?q=sharded").
+            then().
+                statusCode(200).
+                body("$.size()", equalTo(1)).
+                body("[0].taskId", equalTo(taskId.get()));
+        }
+
+        given().
+            header("x-user-id", other).
+        when().
+            get("/app/rest/tasks/search?q=alice").
+        then().
+            statusCode(200).
+            body("$.size()", equalTo(0));
+    }
+
+    private void awaitSearchIndex() throws InterruptedException {
+        // rebuilt and updated in the background, searches are rejected until the rebuild is done
+        while(!module.getTaskSearchIndex().isReady() || module.getTaskSearchIndex().hasPendingChanges()) {
+            Thread.sleep(10);
+        }
+    }
+
+    private String findUserOnOtherShard(String userId) {
+        int shard = module.getHashRing().getShard(userId);
+        for(int i = 0; ; i++) {
+            if(module.getHashRing().getShard("user-" + i) != shard) {
+                return "user-" + i;
+            }
+        }
+    }
+
+    private static class TestModule extends ApplicationModule {
+        @Override
+        public ConfigProvider getConfigProvider() {
+            return new ConfigProvider() {
+                @Override
+                public Optional<String> getConfigProperty(String name) {
+                    return switch(name) {
+                        case "app.jdbc.shards" -> Optional.of("2");
+                        case "app.tasks.groupcommit" -> Optional.of("true");
+                        case "app.tasks.groupcommit.delay" -> Optional.of("5");
+                        default -> super.getConfigProperty(name);
+                    };
+                }
+            };
+        }
+    }
+}
@@ -4,11 +4,28 @@ import static io.restassured.RestAssured.given;
 import static io.restassured.RestAssured.when;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.matchesRegex;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -19,7 +36,7 @@ import com.github.phoswald.sample.utils.ConfigProvider;
 
 class ApplicationTest {
 
-    private static final ApplicationModule module = new TestModule();
+    private final ApplicationModule module = new TestModule(); // closed by testee.stop()
 
     private final Application testee = module.getApplication();
 
@@ -43,6 +60,51 @@ class ApplicationTest {
             body(startsWith("<!doctype html>"), containsString("<title>Ratpack Sample Service</title>"));
     }
 
+    @Test
+    void getIndexPageNotModified() {
+        var etag = new AtomicReference<String>();
+        when().
+            get("/index.html").
+        then().
+            statusCode(200).
+            header("etag", PeekMatcher.peek(etag::set)).
+            header("last-modified", notNullValue()).
+            header("cache-control", equalTo("no-cache"));
+
+        given().
+            header("if-none-match", etag.get()).
+        when().
+            get("/index.html").
+        then().
+            statusCode(304);
+    }
+
+    @Test
+    void headIndexPage() {
+        var etag = new AtomicReference<String>();
+        var length = new AtomicReference<String>();
+        given().
+            header("accept-encoding", "identity").
+        when().
+            get("/index.html").
+        then().
+            statusCode(200).
+            header("etag", PeekMatcher.peek(etag::set)).
+            header("content-length", PeekMatcher.peek(length::set));
+
+        given().
+            header("accept-encoding", "identity").
+        when().
+            head("/index.html").
+        then().
+            statusCode(200).
+            contentType("text/html").
+            header("etag", equalTo(etag.get())).
+            header("last-modified", notNullValue()).
+            header("content-length", equalTo(length.get())).
+            body(equalTo(""));
+    }
+
     @Test
     void getTime() {
         when().
@@ -74,6 +136,17 @@ class ApplicationTest {
             body(equalTo("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n<echoResponse>\n    <output>Received Test Input</output>\n</echoResponse>\n"));
     }
 
+    @Test
+    void postEchoXmlInvalid() {
+        given().
+            contentType("text/xml").
+            body("<echoRequest><input>Test Input</echoRequest>").
+        when().
+            post("/app/rest/sample/echo-xml").
+        then().
+            statusCode(400);
+    }
+
     @Test
     void postEchoJson() {
         given().
@@ -100,6 +173,77 @@ class ApplicationTest {
                 containsString("<td>Test Config Value</td>")); // ${model.sampleConfig}
     }
 
+    @Test
+    void getTasksPage() {
+        when().
+            get("/app/pages/tasks").
+        then().
+            statusCode(200).
+            contentType("text/html").
+            body(startsWith("<!doctype html>"),
+                containsString("<title>Tasks Overview</title>"),
+                containsString("</html>"));
+    }
+
+    @Test
+    void getSamplePageCompressed() {
+        given().
+            header("accept-encoding", "gzip").
+        when().
+            get("/app/pages/sample").
+        then().
+            statusCode(200).
+            contentType("text/html").
+            header("content-encoding", "gzip").
+            header("vary", "accept-encoding");
+
+        given().
+            header("accept-encoding", "gzip").
+            contentType("application/json").
+            body("{\"input\":\"Test Input\"}").
+        when().
+            post("/app/rest/sample/echo-json").
+        then().
+            statusCode(200).
+            header("content-encoding", nullValue()); // below the minimum size
+    }
+
+    @Test
+    void getTemplateStatistics() {
+        when().
+            get("/app/pages/sample").
+        then().
+            statusCode(200);
+
+        when().
+            get("/app/rest/stats/templates").
+        then().
+            statusCode(200).
+            contentType("application/json").
+            body("hits", greaterThan(0)). // parsed when warming up at startup
+            body("misses", greaterThan(0));
+    }
+
+    @Test
+    void getMetrics() {
+        when().
+            get("/app/pages/sample").
+        then().
+            statusCode(200);
+
+        when().
+            get("/app/rest/metrics").
+        then().
+            statusCode(200).
+            contentType(startsWith("text/plain")).
+            body(containsString("http_server_requests_seconds_count{route=\"app/pages/sample\",method=\"GET\"}"),
+                containsString("http_server_responses_total{route=\"app/pages/sample\",method=\"GET\",status=\"2xx\"}"),
+                containsString("template_render_seconds_bucket{template=\"sample\",le=\"+Inf\"}"),
+                containsString("jdbc_connections{state=\"active\"}"),
+                containsString("# TYPE template_renders_total counter"),
+                containsString("# TYPE jdbc_connection_timeouts_total counter"));
+    }
+
     @Test
     void crudTaskResource() {
         var taskId = new AtomicReference<String>();
@@ -168,6 +312,383 @@ class ApplicationTest {
             body(equalTo(""));
     }
 
+    @Test
+    void getTasksNotModified() {
+        var listEtag = new AtomicReference<String>();
+        when().
+            get("/app/rest/tasks").
+        then().
+            statusCode(200).
+            header("etag", PeekMatcher.peek(listEtag::set));
+
+        given().
+            header("if-none-match", listEtag.get()).
+        when().
+            get("/app/rest/tasks").
+        then().
+            statusCode(304);
+
+        var taskId = new AtomicReference<String>();
+        given().
+            contentType("application/json").
+            body("{\"title\":\"Conditional\"}").
+        when().
+            post("/app/rest/tasks").
+        then().
+            statusCode(200).
+            body("taskId", PeekMatcher.peek(taskId::set));
+
+        given().
+            header("if-none-match", listEtag.get()).
+        when().
+            get("/app/rest/tasks").
+        then().
+            statusCode(200);
+
+        var taskEtag = new AtomicReference<String>();
+        when().
+            get("/app/rest/tasks/" + taskId.get()).
+        then().
+            statusCode(200).
+            header("etag", PeekMatcher.peek(taskEtag::set)).
+            header("etag", startsWith("W/\""));
+
+        given().
+            header("if-none-match", taskEtag.get()).
+        when().
+            get("/app/rest/tasks/" + taskId.get()).
+        then().
+            statusCode(304);
+
+        when().
+            delete("/app/rest/tasks/" + taskId.get()).
+        then().
+            statusCode(200);
+    }
+
+    @Test
+    void putTaskIfMatch() {
+        var taskId = new AtomicReference<String>();
+        given().
+            contentType("application/json").
+            body("{\"title\":\"Version 1\"}").
+        when().
+            post("/app/rest/tasks").
+        then().
+            statusCode(200).
+            body("taskId", PeekMatcher.peek(taskId::set)).
+            body("version", equalTo(0));
+
+        var etag = new AtomicReference<String>();
+        when().
+            get("/app/rest/tasks/" + taskId.get()).
+        then().
+            statusCode(200).
+            header("etag", PeekMatcher.peek(etag::set));
+
+        given().
+            contentType("application/json").
+            header("if-match", etag.get()).
+            body("{\"title\":\"Version 2\"}").
+        when().
+            put("/app/rest/tasks/" + taskId.get()).
+        then().
+            statusCode(200).
+            body("version", equalTo(1));
+
+        given().
+            contentType("application/json").
+            header("if-match", etag.get()). // outdated
+            body("{\"title\":\"Version 3\"}").
+        when().
+            put("/app/rest/tasks/" + taskId.get()).
+        then().
+            statusCode(412);
+
+        given().
+            header("if-match", etag.get()).
+        when().
+            delete("/app/rest/tasks/" + taskId.get()).
+        then().
+            statusCode(412);
+
+        when().
+            delete("/app/rest/tasks/" + taskId.get()).
+        then().
+            statusCode(200);
+    }
+
+    @Test
+    void getTaskChanges() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            CompletableFuture<HttpResponse<Stream<String>>> changes = HttpClient.newHttpClient().sendAsync(
+                    HttpRequest.newBuilder(URI.create("http://localhost:8080/app/rest/tasks/changes")).build(), HttpResponse.BodyHandlers.ofLines());
+            while(module.getTaskChangePublisher().getSubscriberCount() == 0) {
+                Thread.sleep(10);
+            }
+
+            var taskId = new AtomicReference<String>();
+            given().
+                contentType("application/json").
+                body("{\"title\":\"Changes\"}").
+            when().
+                post("/app/rest/tasks").
+            then().
+                statusCode(200).
+                body("taskId", PeekMatcher.peek(taskId::set));
+
+            when().
+                delete("/app/rest/tasks/" + taskId.get()).
+            then().
+                statusCode(200);
+
+            HttpResponse<Stream<String>> response = changes.get();
+            assertEquals(200, response.statusCode());
+            assertEquals("text/event-stream", response.headers().firstValue("content-type").orElse(null));
+            try(Stream<String> lines = response.body()) {
+                Iterator<String> iterator = lines.filter(line -> line.startsWith("event: ") || line.startsWith("data: ")).iterator();
+                assertEquals("event: created", iterator.next());
+                assertEquals(taskId.get(), iterator.next().replaceAll(".*\"taskId\":\"([0-9a-f]+)\".*", "$1"));
+                assertEquals("event: deleted", iterator.next());
+            }
+        });
+    }
+
+    @Test
+    void searchTasks() throws InterruptedException {
+        var taskId = new AtomicReference<String>();
+        given().
+            contentType("application/json").
+            body("{\"title\":\"Quarterly report\",\"description\":\"Numbers for finance\"}").
+        when().
+            post("/app/rest/tasks").
+        then().
+            statusCode(200).
+            body("taskId", PeekMatcher.peek(taskId::set));
+        awaitSearchIndex();
+
+        when().
+            get("/app/rest/tasks/search?q=REPORT fin*").
+        then().
+            statusCode(200).
+            contentType("application/json").
+            body("$.size()", equalTo(1)).
+            body("[0].taskId", equalTo(taskId.get()));
+
+        when().
+            get("/app/rest/tasks/search?q=report unknown").
+        then().
+            statusCode(200).
+            body("$.size()", equalTo(0));
+
+        when().
+            get("/app/rest/tasks/search").
+        then().
+            statusCode(400);
+
+        when().
+            get("/app/pages/tasks?q=quarterly").
+        then().
+            statusCode(200).
+            contentType("text/html").
+            body(containsString("Quarterly report"));
+
+        when().
+            delete("/app/rest/tasks/" + taskId.get()).
+        then().
+            statusCode(200);
+        awaitSearchIndex();
+
+        when().
+            get("/app/rest/tasks/search?q=report").
+        then().
+            statusCode(200).
+            body("$.size()", equalTo(0));
+    }
+
+    @Test
+    void tasksArePerUser() {
+        var taskId = new AtomicReference<String>();
+        given().
+            header("x-user-id", "alice").
+            contentType("application/json").
+            body("{\"title\":\"Private task\"}").
+        when().
+            post("/app/rest/tasks").
+        then().
+            statusCode(200).
+            body("taskId", PeekMatcher.peek(taskId::set)).
+            body("userId", equalTo("alice"));
+
+        given().
+            header("x-user-id", "alice").
+        when().
+            get("/app/rest/tasks").
+        then().
+            statusCode(200).
+            body("$.size()", equalTo(1));
+
+        given().
+            header("x-user-id", "bob").
+        when().
+            get("/app/rest/tasks").
+        then().
+            statusCode(200).
+            body("$.size()", equalTo(0));
+
+        given().
+            header("x-user-id", "bob").
+        when().
+            delete("/app/rest/tasks/" + taskId.get()).
+        then().
+            statusCode(404);
+
+        given().
+            header("x-user-id", "alice").
+        when().
+            get("/app/pages/tasks/" + taskId.get()).
+        then().
+            statusCode(200).
+            contentType("text/html").
+            body(containsString("Private task"));
+
+        given().
+            header("x-user-id", "bob").
+        when().
+            get("/app/pages/tasks/" + taskId.get()).
+        then().
+            statusCode(404);
+
+        given().
+            header("x-user-id", "bob").
+        when().
+            get("/app/pages/tasks/" + taskId.get() + "?action=edit").
+        then().
+            statusCode(404);
+
+        given().
+            header("x-user-id", "not valid").
+        when().
+            get("/app/rest/tasks").
+        then().
+            statusCode(400);
+
+        given().
+            header("x-user-id", "alice").
+        when().
+            delete("/app/rest/tasks/" + taskId.get()).
+        then().
+            statusCode(200);
+    }
+
+    @Test
+    void postTasksBatch() {
+        List<String> taskIds =
+        given().
+            contentType("application/json").
+            body("[{\"op\":\"create\",\"title\":\"Batch 1\"},{\"op\":\"create\",\"title\":\"Batch 2\"}," +
+                "{\"op\":\"delete\",\"taskId\":\"00000000000000000000000000000000\"},{\"op\":\"unknown\"}]").
+        when().
+            post("/app/rest/tasks/batch").
+        then().
+            statusCode(200).
+            contentType("application/json").
+            body("$.size()", equalTo(4)).
+            body("status", equalTo(List.of(200, 200, 404, 400))).
+            body("[0].taskId", matchesRegex("[0-9a-f]{32}")).
+        extract().
+            path("taskId");
+
+        given().
+            contentType("application/json").
+            body("[{\"op\":\"delete\",\"taskId\":\"" + taskIds.get(0) + "\"},{\"op\":\"delete\",\"taskId\":\"" + taskIds.get(1) + "\"}]").
+        when().
+            post("/app/rest/tasks/batch").
+        then().
+            statusCode(200).
+            body("status", equalTo(List.of(200, 200)));
+
+        given().
+            contentType("application/json").
+            body("[{\"op\":\"create\",\"title\":\"Batch 3\"},{\"op\":").
+        when().
+            post("/app/rest/tasks/batch").
+        then().
+            statusCode(400);
+
+        when().
+            get("/app/rest/tasks").
+        then().
+            statusCode(200).
+            body("$.size()", equalTo(0)); // the invalid batch was rolled back
+    }
+
+    @Test
+    void postTasksBatchInChunks() {
+        // more operations than are flushed at once, the results are streamed chunk by chunk
+        String creates = IntStream.range(0, 120).mapToObj(i -> "{\"op\":\"create\",\"title\":\"Chunked " + i + "\"}").collect(Collectors.joining(",", "[", "]"));
+        List<String> taskIds =
+        given().
+            contentType("application/json").
+            body(creates).
+        when().
+            post("/app/rest/tasks/batch").
+        then().
+            statusCode(200).
+            contentType("application/json").
+            body("$.size()", equalTo(120)).
+            body("[119].index", equalTo(119)).
+            body("[119].status", equalTo(200)).
+        extract().
+            path("taskId");
+
+        String deletes = taskIds.stream().map(taskId -> "{\"op\":\"delete\",\"taskId\":\"" + taskId + "\"}").collect(Collectors.joining(",", "[", "]"));
+        given().
+            contentType("application/json").
+            body(deletes).
+        when().
+            post("/app/rest/tasks/batch").
+        then().
+            statusCode(200).
+            body("status", everyItem(equalTo(200)));
+    }
+
+    @Test
+    void getTasksExport() {
+        List<String> taskIds =
+        given().
+            contentType("application/json").
+            body("[{\"op\":\"create\",\"title\":\"Export 1\"},{\"op\":\"create\",\"title\":\"Export 2\"}]").
+        when().
+            post("/app/rest/tasks/batch").
+        then().
+            statusCode(200).
+        extract().
+            path("taskId");
+
+        when().
+            get("/app/rest/tasks/export").
+        then().
+            statusCode(200).
+            contentType("application/x-ndjson").
+            body(matchesRegex("(\\{.*\"taskId\":\"[0-9a-f]{32}\".*\\}\n){2}"));
+
+        given().
+            contentType("application/json").
+            body("[{\"op\":\"delete\",\"taskId\":\"" + taskIds.get(0) + "\"},{\"op\":\"delete\",\"taskId\":\"" + taskIds.get(1) + "\"}]").
+        when().
+            post("/app/rest/tasks/batch").
+        then().
+            statusCode(200);
+    }
+
+    private void awaitSearchIndex() throws InterruptedException {
+        // rebuilt and updated in the background, searches are rejected until the rebuild is done
+        while(!module.getTaskSearchIndex().isReady() || module.getTaskSearchIndex().hasPendingChanges()) {
+            Thread.sleep(10);
+        }
+    }
+
     private static class TestModule extends ApplicationModule {
         @Override
         public ConfigProvider getConfigProvider() {
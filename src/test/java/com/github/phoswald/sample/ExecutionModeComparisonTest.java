@@ -0,0 +1,115 @@
+package com.github.phoswald.sample;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.phoswald.sample.utils.ConfigProvider;
+
+@Tag("perf")
+class ExecutionModeComparisonTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionModeComparisonTest.class);
+
+    private static final int CLIENTS = 64;
+    private static final int REQUESTS_PER_CLIENT = 200;
+
+    private final HttpClient client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+
+    @ParameterizedTest
+    @ValueSource(strings = { "ratpack", "pool", "virtual" })
+    void compareModes(String mode) throws Exception {
+        Application testee = new TestModule(mode).getApplication();
+        testee.start();
+        try {
+            URI uri = URI.create("http://localhost:" + testee.getPort() + "/app/rest/tasks");
+            for (int i = 0; i < 50; i++) {
+                send(HttpRequest.newBuilder(uri) //
+                        .header("content-type", "application/json") //
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"title\":\"Task " + i + "\"}")).build());
+            }
+            run(mode, uri, 20); // warm up
+            run(mode, uri, REQUESTS_PER_CLIENT);
+        } finally {
+            testee.stop();
+        }
+    }
+
+    private void run(String mode, URI uri, int requestsPerClient) throws Exception {
+        var errors = new AtomicInteger();
+        long[] latencies = new long[CLIENTS * requestsPerClient];
+        long start = System.nanoTime();
+        try (var clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < CLIENTS; c++) {
+                int offset = c * requestsPerClient;
+                futures.add(clients.submit(() -> {
+                    for (int r = 0; r < requestsPerClient; r++) {
+                        long requestStart = System.nanoTime();
+                        int status = send(HttpRequest.newBuilder(uri).GET().build());
+                        latencies[offset + r] = System.nanoTime() - requestStart;
+                        if (status != 200) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        logger.info(String.format("mode=%s, requests=%d, throughput=%.0f req/s, p50=%.2f ms, p99=%.2f ms, errors=%d", mode,
+                latencies.length, latencies.length / (elapsed / 1e9), percentile(latencies, 0.50), percentile(latencies, 0.99), errors.get()));
+        assertEquals(0, errors.get());
+    }
+
+    private int send(HttpRequest request) throws Exception {
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1e6;
+    }
+
+    private static class TestModule extends ApplicationModule {
+
+        private final String mode;
+
+        TestModule(String mode) {
+            this.mode = mode;
+        }
+
+        @Override
+        public ConfigProvider getConfigProvider() {
+            return new ConfigProvider() {
+                @Override
+                public Optional<String> getConfigProperty(String name) {
+                    return switch(name) {
+                        case "app.http.port" -> Optional.of("0");
+                        case "app.exec.mode" -> Optional.of(mode);
+                        default -> super.getConfigProperty(name);
+                    };
+                }
+            };
+        }
+    }
+}
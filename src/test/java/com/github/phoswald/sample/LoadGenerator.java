@@ -0,0 +1,176 @@
+package com.github.phoswald.sample;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/*
+ * Open-loop load generator: requests are sent at a fixed rate, independent of the response times.
+ * Latency is measured from the intended start time of each request, so a stalled server is charged
+ * for the requests that should have been sent while it was stalled (no coordinated omission).
+ */
+class LoadGenerator {
+
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final Map<String, Route> routes = new LinkedHashMap<>();
+
+    LoadGenerator(String baseUrl) {
+        addRoute("tasks", HttpRequest.newBuilder(URI.create(baseUrl + "/app/rest/tasks")).GET().build());
+        addRoute("pages", HttpRequest.newBuilder(URI.create(baseUrl + "/app/pages/tasks")).GET().build());
+        addRoute("echo-json", HttpRequest.newBuilder(URI.create(baseUrl + "/app/rest/sample/echo-json")) //
+                .header("content-type", "application/json") //
+                .POST(HttpRequest.BodyPublishers.ofString("{\"input\":\"Load Test\"}")).build());
+        addRoute("echo-xml", HttpRequest.newBuilder(URI.create(baseUrl + "/app/rest/sample/echo-xml")) //
+                .header("content-type", "text/xml") //
+                .POST(HttpRequest.BodyPublishers.ofString("<echoRequest><input>Load Test</input></echoRequest>")).build());
+    }
+
+    private void addRoute(String name, HttpRequest request) {
+        routes.put(name, new Route(name, request));
+    }
+
+    Report run(String mix, int rate, int durationSeconds) {
+        Route[] schedule = createSchedule(mix);
+        routes.values().forEach(Route::reset);
+        long count = (long) rate * durationSeconds;
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (long i = 0; i < count; i++) {
+            long intendedStart = start + i * interval;
+            long delay = intendedStart - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            Route route = schedule[(int) (i % schedule.length)];
+            futures.add(client.sendAsync(route.request, HttpResponse.BodyHandlers.discarding()) //
+                    .handle((response, e) -> route.record(intendedStart, e == null && response.statusCode() < 400)));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        long elapsed = System.nanoTime() - start;
+        return new Report(mix, rate, elapsed, List.copyOf(routes.values()));
+    }
+
+    private Route[] createSchedule(String mix) {
+        // "tasks=4,pages=1" sends four task list requests for every task page, interleaved
+        List<Route> schedule = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            Route route = routes.get(parts[0]);
+            if (route == null) {
+                throw new IllegalArgumentException("Unknown route '" + parts[0] + "', expected one of " + routes.keySet());
+            }
+            int weight = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+            for (int i = 0; i < weight; i++) {
+                schedule.add(route);
+            }
+        }
+        return schedule.toArray(Route[]::new);
+    }
+
+    static class Route {
+
+        private final String name;
+        private final HttpRequest request;
+        private final Histogram histogram = new ConcurrentHistogram(MAX_LATENCY_NANOS, 3);
+        private final AtomicLong errors = new AtomicLong();
+
+        Route(String name, HttpRequest request) {
+            this.name = name;
+            this.request = request;
+        }
+
+        private void reset() {
+            histogram.reset();
+            errors.set(0);
+        }
+
+        private Void record(long intendedStart, boolean success) {
+            histogram.recordValue(Math.min(System.nanoTime() - intendedStart, MAX_LATENCY_NANOS));
+            if (!success) {
+                errors.incrementAndGet();
+            }
+            return null;
+        }
+    }
+
+    static class Report {
+
+        private final String mix;
+        private final int rate;
+        private final long elapsedNanos;
+        private final List<Route> routes;
+        private final Histogram total = new Histogram(MAX_LATENCY_NANOS, 3);
+
+        Report(String mix, int rate, long elapsedNanos, List<Route> routes) {
+            this.mix = mix;
+            this.rate = rate;
+            this.elapsedNanos = elapsedNanos;
+            this.routes = routes;
+            routes.forEach(route -> total.add(route.histogram));
+        }
+
+        long getRequests() {
+            return total.getTotalCount();
+        }
+
+        long getErrors() {
+            return routes.stream().mapToLong(route -> route.errors.get()).sum();
+        }
+
+        double getErrorRate() {
+            return getRequests() == 0 ? 0 : (double) getErrors() / getRequests();
+        }
+
+        double getThroughput() {
+            return getRequests() / (elapsedNanos / 1e9);
+        }
+
+        void print(PrintStream out) {
+            out.println(String.format("mix=%s, target rate=%d req/s, throughput=%.0f req/s, requests=%d, errors=%d (%.2f%%)", //
+                    mix, rate, getThroughput(), getRequests(), getErrors(), getErrorRate() * 100));
+            out.println(String.format("%-10s %10s %8s %10s %10s %10s %10s", "route", "requests", "errors", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+            for (Route route : routes) {
+                if (route.histogram.getTotalCount() > 0) {
+                    printLine(out, route.name, route.histogram, route.errors.get());
+                }
+            }
+            printLine(out, "total", total, getErrors());
+        }
+
+        private static void printLine(PrintStream out, String name, Histogram histogram, long errors) {
+            out.println(String.format("%-10s %10d %8d %10.2f %10.2f %10.2f %10.2f", name, histogram.getTotalCount(), errors, //
+                    histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(99) / 1e6, //
+                    histogram.getValueAtPercentile(99.9) / 1e6, histogram.getMaxValue() / 1e6));
+        }
+
+        void write(Path directory) throws IOException {
+            // the .hgrm file can be plotted with https://hdrhistogram.github.io/HdrHistogram/plotFiles.html
+            Files.createDirectories(directory);
+            try (var out = new PrintStream(Files.newOutputStream(directory.resolve("load-report.txt")))) {
+                print(out);
+            }
+            try (var out = new PrintStream(Files.newOutputStream(directory.resolve("load-latency.hgrm")))) {
+                total.outputPercentileDistribution(out, 1e6);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.phoswald.sample;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.phoswald.sample.utils.ConfigProvider;
+
+@Tag("perf")
+class LoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+
+    private static final String MIX = System.getProperty("load.mix", "tasks=4,pages=2,echo-json=2,echo-xml=1");
+    private static final int RATE = Integer.getInteger("load.rate", 500);
+    private static final int DURATION = Integer.getInteger("load.duration", 30);
+    private static final double MAX_ERROR_RATE = Double.parseDouble(System.getProperty("load.maxerrorrate", "0.01"));
+
+    private final Application testee = new TestModule().getApplication();
+
+    @BeforeEach
+    void start() throws Exception {
+        testee.start();
+    }
+
+    @AfterEach
+    void cleanup() throws Exception {
+        testee.stop();
+    }
+
+    @Test
+    void runLoad() throws Exception {
+        String baseUrl = "http://localhost:" + testee.getPort();
+        HttpClient client = HttpClient.newHttpClient();
+        for (int i = 0; i < 100; i++) {
+            client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/app/rest/tasks")) //
+                    .header("content-type", "application/json") //
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"title\":\"Task " + i + "\"}")).build(), HttpResponse.BodyHandlers.discarding());
+        }
+
+        var generator = new LoadGenerator(baseUrl);
+        generator.run(MIX, RATE, Math.max(1, DURATION / 10)); // warm up
+        LoadGenerator.Report report = generator.run(MIX, RATE, DURATION);
+
+        var buffer = new ByteArrayOutputStream();
+        report.print(new PrintStream(buffer, true));
+        logger.info("Load test result:\n" + buffer);
+        report.write(Path.of("target"));
+        assertTrue(report.getErrorRate() <= MAX_ERROR_RATE, "error rate " + report.getErrorRate());
+    }
+
+    private static class TestModule extends ApplicationModule {
+        @Override
+        public ConfigProvider getConfigProvider() {
+            return new ConfigProvider() {
+                @Override
+                public Optional<String> getConfigProperty(String name) {
+                    return switch(name) {
+                        case "app.http.port" -> Optional.of("0");
+                        default -> super.getConfigProperty(name);
+                    };
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.phoswald.sample;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Time from starting the JVM until the first successful request for tasks, which includes the bootstrap of
+ * Hibernate, with the warm-up before the port is opened (app.startup.warmup=true) and without it.
+ */
+@Tag("perf")
+class StartupTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupTest.class);
+
+    private static final int RUNS = Integer.getInteger("startup.runs", 5);
+    private static final String JVM_ARGS = System.getProperty("startup.jvmargs", ""); // e.g. -XX:AOTCache=target/app.aot
+    private static final String CLASS_PATH = System.getProperty("startup.classpath", System.getProperty("java.class.path")); // must match an AOT cache
+    private static final long TIMEOUT = 60_000;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void timeToFirstRequest() throws Exception {
+        long lazy = median(false);
+        long eager = median(true);
+        String report = "runs=" + RUNS + ", jvmargs=" + JVM_ARGS + "\n" //
+                + "app.startup.warmup=false: " + lazy + " ms\n" //
+                + "app.startup.warmup=true:  " + eager + " ms\n";
+        logger.info("Startup test result (median time to first successful request):\n" + report);
+        Files.writeString(Path.of("target", "startup-report.txt"), report);
+    }
+
+    private long median(boolean warmUp) throws Exception {
+        long[] millis = new long[RUNS];
+        for(int i = 0; i < RUNS; i++) {
+            millis[i] = measure(warmUp);
+        }
+        Arrays.sort(millis);
+        return millis[RUNS / 2];
+    }
+
+    private long measure(boolean warmUp) throws Exception {
+        int port = findFreePort();
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        if(!JVM_ARGS.isBlank()) {
+            command.addAll(Arrays.asList(JVM_ARGS.trim().split("\\s+")));
+        }
+        command.addAll(List.of("-cp", CLASS_PATH, //
+                "-Dapp.http.port=" + port, "-Dapp.startup.warmup=" + warmUp, //
+                Application.class.getName()));
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(new File("target/startup-app.log")).start();
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/app/rest/tasks")).build();
+            while(true) {
+                assertTrue(process.isAlive(), "application has terminated, see target/startup-app.log");
+                assertTrue(System.nanoTime() - start < TIMEOUT * 1000000, "application has not started");
+                try {
+                    if(client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        return (System.nanoTime() - start) / 1000000;
+                    }
+                } catch(ConnectException e) {
+                    // not listening yet
+                }
+                Thread.sleep(5);
+            }
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private static int findFreePort() throws IOException {
+        try(ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
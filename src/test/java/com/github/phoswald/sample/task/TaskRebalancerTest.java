@@ -0,0 +1,74 @@
+package com.github.phoswald.sample.task;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.phoswald.sample.ApplicationModule;
+import com.github.phoswald.sample.utils.ConfigProvider;
+
+class TaskRebalancerTest {
+
+    private static final int USERS = 20;
+
+    @Test
+    void testRebalance() {
+        try(var before = new ShardedModule(1)) {
+            for(int user = 0; user < USERS; user++) {
+                try(TaskRepository testee = before.getTaskRepositoryFactory().openReadWrite("user-" + user)) {
+                    TaskEntity entity = new TaskEntity();
+                    entity.setNewTaskId();
+                    entity.setTimestamp(Instant.now());
+                    entity.setTitle("Test Title " + user);
+                    testee.createTask(entity);
+                }
+            }
+        }
+
+        try(var after = new ShardedModule(3)) {
+            new TaskRebalancer(after, 1).run();
+
+            long total = 0;
+            for(int user = 0; user < USERS; user++) {
+                try(TaskRepository testee = after.getTaskRepositoryFactory().openReadOnly("user-" + user)) {
+                    assertEquals(1, testee.selectAllTasks().size());
+                    assertEquals(0L, testee.selectAllTasks().get(0).getVersion()); // kept when moved
+                }
+            }
+            for(int shard = 0; shard < 3; shard++) {
+                try(TaskRepository testee = after.getTaskRepositoryFactory().openShardReadOnly(shard);
+                        Stream<TaskEntity> tasks = testee.streamAllTasks()) {
+                    total += tasks.count();
+                }
+            }
+            assertEquals((long) USERS, total);
+        }
+    }
+
+    private static class ShardedModule extends ApplicationModule {
+
+        private final int shards;
+
+        private ShardedModule(int shards) {
+            this.shards = shards;
+        }
+
+        @Override
+        public ConfigProvider getConfigProvider() {
+            return new ConfigProvider() {
+                @Override
+                public Optional<String> getConfigProperty(String name) {
+                    return switch(name) {
+                        case "app.jdbc.shards" -> Optional.of(Integer.toString(shards));
+                        case "app.jdbc.url" -> Optional.of("jdbc:h2:mem:rebalance-{shard};DB_CLOSE_DELAY=-1");
+                        default -> super.getConfigProperty(name);
+                    };
+                }
+            };
+        }
+    }
+}
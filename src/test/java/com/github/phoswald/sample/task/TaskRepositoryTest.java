@@ -1,20 +1,30 @@
 package com.github.phoswald.sample.task;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.time.Instant;
 import java.util.List;
 
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.github.phoswald.sample.ApplicationModule;
 
 class TaskRepositoryTest {
 
-    private static final ApplicationModule module = new ApplicationModule();
+    private static final Logger logger = LoggerFactory.getLogger(TaskRepositoryTest.class);
+
+    private final ApplicationModule module = new ApplicationModule();
+
+    // without cache, so that every read goes to the database
+    private final TaskRepositoryFactory factory = new TaskRepositoryFactory(module::getEntityManagerFactory, module.getHashRing(), null, null);
 
     @Test
     void testCrud() {
-        try(TaskRepository testee = new TaskRepository(module.getEntityManagerFactory())) {
+        try(TaskRepository testee = factory.openReadWrite(TaskRepository.DEFAULT_USER)) {
             assertEquals(0, testee.selectAllTasks().size());
 
             TaskEntity entity = new TaskEntity();
@@ -24,7 +34,7 @@ class TaskRepositoryTest {
             testee.createTask(entity);
         }
 
-        try(TaskRepository testee = new TaskRepository(module.getEntityManagerFactory())) {
+        try(TaskRepository testee = factory.openReadWrite(TaskRepository.DEFAULT_USER)) {
             List<TaskEntity> entites = testee.selectAllTasks();
 
             assertEquals(1, entites.size());
@@ -32,4 +42,106 @@ class TaskRepositoryTest {
             assertEquals("Test Description", entites.get(0).getDescription());
         }
     }
+
+    @Test
+    void testReadOnly() {
+        TaskEntity entity = new TaskEntity();
+        entity.setNewTaskId();
+        entity.setTitle("Test Title");
+        try(TaskRepository testee = factory.openReadWrite(TaskRepository.DEFAULT_USER)) {
+            testee.createTask(entity);
+        }
+
+        try(TaskRepository testee = factory.openReadOnly(TaskRepository.DEFAULT_USER)) {
+            testee.selectTaskById(entity.getTaskId()).setTitle("Changed Title");
+        }
+
+        try(TaskRepository testee = factory.openReadOnly(TaskRepository.DEFAULT_USER)) {
+            assertEquals("Test Title", testee.selectTaskById(entity.getTaskId()).getTitle());
+        }
+    }
+
+    @Test
+    void testPagination() {
+        Instant now = Instant.now();
+        try(TaskRepository testee = factory.openReadWrite(TaskRepository.DEFAULT_USER)) {
+            for(int i = 0; i < 5; i++) {
+                TaskEntity entity = new TaskEntity();
+                entity.setNewTaskId();
+                entity.setTimestamp(i < 3 ? now : now.minusSeconds(i)); // ties are ordered by id
+                entity.setTitle("Test Title " + i);
+                testee.createTask(entity);
+            }
+        }
+
+        try(TaskRepository testee = factory.openReadWrite(TaskRepository.DEFAULT_USER)) {
+            List<TaskEntity> all = testee.selectTasks(null, 10);
+            List<TaskEntity> page1 = testee.selectTasks(null, 2);
+            List<TaskEntity> page2 = testee.selectTasks(TaskCursor.decode(TaskCursor.of(page1.get(1)).encode()), 2);
+            List<TaskEntity> page3 = testee.selectTasks(TaskCursor.of(page2.get(1)), 2);
+
+            assertEquals(5, all.size());
+            assertEquals(List.of(all.get(0), all.get(1)), page1);
+            assertEquals(List.of(all.get(2), all.get(3)), page2);
+            assertEquals(List.of(all.get(4)), page3);
+        }
+    }
+
+    @Test
+    @Tag("perf")
+    void testReadOnlyPerformance() {
+        try(TaskRepository testee = factory.openReadWrite(TaskRepository.DEFAULT_USER)) {
+            for(int i = 0; i < 100; i++) {
+                TaskEntity entity = new TaskEntity();
+                entity.setNewTaskId();
+                entity.setTimestamp(Instant.now());
+                entity.setTitle("Test Title " + i);
+                testee.createTask(entity);
+            }
+        }
+        for(int round = 0; round < 2; round++) { // first round warms up
+            for(boolean readOnly : new boolean[] { false, true }) {
+                long start = System.nanoTime();
+                for(int i = 0; i < 2000; i++) {
+                    try(TaskRepository testee = readOnly ? factory.openReadOnly(TaskRepository.DEFAULT_USER) : factory.openReadWrite(TaskRepository.DEFAULT_USER)) {
+                        assertEquals(100, testee.selectTasks(null, 100).size());
+                    }
+                }
+                long nanos = (System.nanoTime() - start) / 2000;
+                logger.info(String.format("readOnly=%b, list of 100 tasks=%.3f ms", readOnly, nanos / 1e6));
+            }
+        }
+    }
+
+    @Test
+    @Tag("perf")
+    void testPaginationLarge() {
+        int rows = 1_000_000;
+        var em = module.getEntityManagerFactory().createEntityManager();
+        em.getTransaction().begin();
+        em.createNativeQuery("insert into task_ (task_id_, user_id_, timestamp_, title_, done_) " //
+                + "select random_uuid(), 'guest', dateadd(second, -x, current_timestamp), 'Task ' || x, false " //
+                + "from system_range(1, " + rows + ")").executeUpdate();
+        em.getTransaction().commit();
+        TaskCursor deepCursor = TaskCursor.of(em.createNamedQuery(TaskEntity.SELECT_ALL, TaskEntity.class)
+                .setParameter("userId", TaskRepository.DEFAULT_USER).setFirstResult(rows - 200).setMaxResults(1).getSingleResult());
+        em.close();
+
+        try(TaskRepository testee = factory.openReadWrite(TaskRepository.DEFAULT_USER)) {
+            List<TaskEntity> first = testee.selectTasks(null, 100);
+            testee.selectTasks(deepCursor, 100); // warm up
+
+            long start = System.nanoTime();
+            first = testee.selectTasks(null, 100);
+            long firstNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            List<TaskEntity> deep = testee.selectTasks(deepCursor, 100);
+            long deepNanos = System.nanoTime() - start;
+
+            logger.info(String.format("rows=%d, first page=%.2f ms, deep page=%.2f ms", rows, firstNanos / 1e6, deepNanos / 1e6));
+            assertEquals(100, first.size());
+            assertEquals(100, deep.size());
+            assertTrue(deep.get(0).getTimestamp().compareTo(deepCursor.getTimestamp()) <= 0);
+        }
+    }
 }
@@ -0,0 +1,64 @@
+package com.github.phoswald.sample.task;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.phoswald.sample.ApplicationModule;
+
+import jakarta.persistence.EntityManager;
+
+@Tag("perf")
+class TaskSchemaBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskSchemaBenchmarkTest.class);
+
+    private static final int ROWS = 500_000;
+    private static final int ITERATIONS = 50;
+    private static final List<String> QUERIES = List.of( //
+            "select * from task_ order by timestamp_ desc, task_id_ desc limit 100",
+            "select * from task_ where user_id_ = 'user-42' order by timestamp_ desc limit 100",
+            "select count(*) from task_ where done_ = true");
+
+    private final ApplicationModule module = new ApplicationModule();
+
+    @Test
+    void compareQueryPlans() {
+        EntityManager em = module.getEntityManagerFactory().createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.createNativeQuery("insert into task_ (task_id_, user_id_, timestamp_, title_, done_) " //
+                    + "select random_uuid(), 'user-' || mod(x, 1000), dateadd(second, -x, current_timestamp), 'Task ' || x, mod(x, 100) = 0 " //
+                    + "from system_range(1, " + ROWS + ")").executeUpdate();
+            em.getTransaction().commit();
+
+            measure(em, "with indexes");
+
+            em.getTransaction().begin();
+            em.createNativeQuery("drop index task_timestamp_ix").executeUpdate();
+            em.createNativeQuery("drop index task_user_order_ix").executeUpdate();
+            em.createNativeQuery("drop index task_done_ix").executeUpdate();
+            em.getTransaction().commit();
+
+            measure(em, "without indexes");
+        } finally {
+            em.close();
+        }
+    }
+
+    private void measure(EntityManager em, String label) {
+        for (String query : QUERIES) {
+            Object plan = em.createNativeQuery("explain " + query).getSingleResult();
+            em.createNativeQuery(query).getResultList(); // warm up
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                em.createNativeQuery(query).getResultList();
+            }
+            long nanos = (System.nanoTime() - start) / ITERATIONS;
+            logger.info(String.format("%s, rows=%d, latency=%.2f ms, query: %s%nplan: %s", label, ROWS, nanos / 1e6, query, plan));
+        }
+    }
+}